@@ -0,0 +1,463 @@
+package com.jionek.peopledb.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * Generates straight-line mapping code at compile time, so repositories need no reflection on each call:
+ * <ul>
+ * <li>an EntityMapper per @Table entity, named after it, i.e. PersonEntityMapper, reading rows, binding the
+ * @Column fields and getting and setting the @Id field through the entity's own constructor, getters and setters.
+ * An @Id field without a setter, like the final Address.id, is still set reflectively, through a MethodHandle
+ * looked up once when the mapper loads: saves give the caller's instance its ID in place, other objects
+ * may already point at it;</li>
+ * <li>GeneratedRepositoryMetadata, handing out these mappers by entity class and the @SQL/@MultiSql statements
+ * of every repository by repository class.</li>
+ * </ul>
+ * The annotations are read by name, the mappers go to the repository package as EntityMapper is package-private there.
+ */
+@SupportedAnnotationTypes({EntityMapperProcessor.TABLE, EntityMapperProcessor.SQL, EntityMapperProcessor.MULTI_SQL})
+public class EntityMapperProcessor extends AbstractProcessor {
+    static final String TABLE = "com.jionek.peopledb.annotation.Table";
+    static final String SQL = "com.jionek.peopledb.annotation.SQL";
+    static final String MULTI_SQL = "com.jionek.peopledb.annotation.MultiSql";
+    private static final String ID = "com.jionek.peopledb.annotation.Id";
+    private static final String COLUMN = "com.jionek.peopledb.annotation.Column";
+    private static final String TARGET_PACKAGE = "com.jionek.peopledb.repository";
+    private static final String REGISTRY = "GeneratedRepositoryMetadata";
+    private static final String GENERATED = "@javax.annotation.processing.Generated(\"" + EntityMapperProcessor.class.getName() + "\")";
+
+    // MapperSupport read/bind method suffix by field type, enums are handled apart
+    private static final Map<String, String> SUPPORTED_TYPES = Map.of(
+            "java.lang.Long", "Long",
+            "long", "LongValue",
+            "java.lang.Integer", "Integer",
+            "int", "IntValue",
+            "java.lang.String", "String",
+            "java.math.BigDecimal", "BigDecimal",
+            "java.time.ZonedDateTime", "ZonedDateTime",
+            "java.time.LocalDate", "LocalDate");
+
+    private boolean registryWritten;
+
+    private record MappedField(VariableElement field, String column, String type, String support, boolean isEnum,
+                               String getter, String setter) {
+        String name() {
+            return field.getSimpleName().toString();
+        }
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (registryWritten || roundEnv.processingOver()) return false;
+        Map<String, String> mappers = new LinkedHashMap<>();
+        for (Element element : annotatedWith(roundEnv, TABLE)) {
+            if (element instanceof TypeElement entity) {
+                String mapper = generateMapper(entity);
+                if (mapper != null) mappers.put(entity.getQualifiedName().toString(), mapper);
+            }
+        }
+        Map<TypeElement, Map<String, String>> sqlByRepository = new LinkedHashMap<>();
+        for (Element element : roundEnv.getRootElements()) {
+            if (element instanceof TypeElement type) {
+                Map<String, String> sql = collectSql(type);
+                if (!sql.isEmpty()) sqlByRepository.put(type, sql);
+            }
+        }
+        if (mappers.isEmpty() && sqlByRepository.isEmpty()) return false;
+        writeRegistry(mappers, sqlByRepository);
+        registryWritten = true;
+        // the annotations are still read at runtime by classes nobody generated metadata for
+        return false;
+    }
+
+    private Set<? extends Element> annotatedWith(RoundEnvironment roundEnv, String annotation) {
+        TypeElement type = processingEnv.getElementUtils().getTypeElement(annotation);
+        return type == null ? Set.of() : roundEnv.getElementsAnnotatedWith(type);
+    }
+
+    /**
+     * @return simple name of the generated mapper, null when the entity can't be mapped
+     */
+    private String generateMapper(TypeElement entity) {
+        if (!entity.getModifiers().contains(Modifier.PUBLIC)) {
+            return error(entity, "@Table entity must be public");
+        }
+        String table = (String) annotationValue(annotation(entity, TABLE), "value");
+        List<MappedField> fields = new ArrayList<>();
+        MappedField id = null;
+        for (VariableElement field : ElementFilter.fieldsIn(entity.getEnclosedElements())) {
+            boolean isId = annotation(field, ID) != null;
+            AnnotationMirror column = annotation(field, COLUMN);
+            if (!isId && column == null) continue;
+            MappedField mapped = mappedField(entity, field, isId ? "ID" : (String) annotationValue(column, "value"));
+            if (mapped == null) return null;
+            if (isId) {
+                id = mapped;
+            } else {
+                fields.add(mapped);
+            }
+        }
+        if (id == null) return error(entity, "@Table entity has no @Id field");
+        if (!id.type().equals("java.lang.Long")) return error(id.field(), "@Id field must be a Long");
+        fields.add(0, id);
+
+        ExecutableElement constructor = pickConstructor(entity, fields);
+        if (constructor == null) {
+            return error(entity, "@Table entity needs a public constructor taking only @Id and @Column fields");
+        }
+        List<String> constructorArguments = new ArrayList<>();
+        for (VariableElement parameter : constructor.getParameters()) {
+            constructorArguments.add(parameter.getSimpleName().toString());
+        }
+        for (MappedField field : fields) {
+            if (field != id && !constructorArguments.contains(field.name()) && field.setter() == null) {
+                return error(field.field(), "@Column field has neither a constructor parameter nor a setter");
+            }
+        }
+
+        String entityType = entity.getQualifiedName().toString();
+        String mapperName = entity.getSimpleName() + "EntityMapper";
+        StringJoiner columns = new StringJoiner(", ");
+        StringJoiner quotedColumns = new StringJoiner(", ");
+        StringJoiner placeholders = new StringJoiner(", ");
+        StringJoiner assignments = new StringJoiner(", ");
+        for (MappedField field : fields) {
+            quotedColumns.add(literal(field.column()));
+            if (field == id) continue;
+            columns.add(field.column());
+            placeholders.add("?");
+            assignments.add(field.column() + "=?");
+        }
+
+        try (PrintWriter out = new PrintWriter(processingEnv.getFiler()
+                .createSourceFile(TARGET_PACKAGE + "." + mapperName, entity).openWriter())) {
+            out.println("package " + TARGET_PACKAGE + ";");
+            out.println();
+            out.println("/**");
+            out.println(" * Maps " + entity.getSimpleName() + " to the " + table + " table, generated from its @Id and @Column fields.");
+            out.println(" */");
+            out.println(GENERATED);
+            out.println("final class " + mapperName + " implements EntityMapper<" + entityType + "> {");
+            out.println("    static final " + mapperName + " INSTANCE = new " + mapperName + "();");
+            out.println("    static final String INSERT_SQL = " + literal("INSERT INTO " + table + " (" + columns + ") VALUES(" + placeholders + ")") + ";");
+            out.println("    static final String UPDATE_SQL = " + literal("UPDATE " + table + " SET " + assignments + " WHERE ID=?") + ";");
+            out.println("    private static final String[] COLUMNS = {" + quotedColumns + "};");
+            if (id.setter() == null) {
+                out.println("    private static final java.lang.invoke.MethodHandle ID_SETTER = idSetter();");
+            }
+            out.println();
+            out.println("    private " + mapperName + "() {");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public String[] columns() {");
+            out.println("        return COLUMNS.clone();");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public Long getId(" + entityType + " entity) {");
+            out.println("        return entity." + id.getter() + "();");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public void setId(" + entityType + " entity, Long id) {");
+            if (id.setter() != null) {
+                out.println("        entity." + id.setter() + "(id);");
+            } else {
+                out.println("        try {");
+                out.println("            ID_SETTER.invokeExact(entity, id);");
+                out.println("        } catch (Throwable e) {");
+                out.println("            throw new com.jionek.peopledb.exception.DataException(\"Unable to set ID field value\", e);");
+                out.println("        }");
+            }
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public " + entityType + " read(java.sql.ResultSet rs, int[] columnIndexes) throws java.sql.SQLException {");
+            StringJoiner arguments = new StringJoiner(",\n                ");
+            for (String parameter : constructorArguments) {
+                int index = indexOf(fields, parameter);
+                arguments.add(readExpression(fields.get(index), index));
+            }
+            if (constructorArguments.isEmpty()) {
+                out.println("        " + entityType + " entity = new " + entityType + "();");
+            } else {
+                out.println("        " + entityType + " entity = new " + entityType + "(");
+                out.println("                " + arguments + ");");
+            }
+            for (int i = 0; i < fields.size(); i++) {
+                MappedField field = fields.get(i);
+                if (constructorArguments.contains(field.name())) continue;
+                if (field == id) {
+                    out.println("        setId(entity, " + readExpression(field, i) + ");");
+                } else {
+                    out.println("        entity." + field.setter() + "(" + readExpression(field, i) + ");");
+                }
+            }
+            out.println("        return entity;");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public int bindColumns(" + entityType + " entity, java.sql.PreparedStatement ps, int parameterIndex) throws java.sql.SQLException {");
+            for (int i = 1; i < fields.size(); i++) {
+                MappedField field = fields.get(i);
+                String offset = i == 1 ? "" : " + " + (i - 1);
+                out.println("        MapperSupport.bind" + (field.isEnum() ? "Enum" : field.support())
+                        + "(ps, parameterIndex" + offset + ", entity." + field.getter() + "());");
+            }
+            out.println("        return parameterIndex + " + (fields.size() - 1) + ";");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public String insertSql() {");
+            out.println("        return INSERT_SQL;");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public String updateSql() {");
+            out.println("        return UPDATE_SQL;");
+            out.println("    }");
+            if (id.setter() == null) {
+                out.println();
+                out.println("    // the ID field has no setter (i.e. it's final), it's set reflectively through a handle looked up once");
+                out.println("    private static java.lang.invoke.MethodHandle idSetter() {");
+                out.println("        try {");
+                out.println("            java.lang.reflect.Field field = " + entityType + ".class.getDeclaredField(" + literal(id.name()) + ");");
+                out.println("            field.setAccessible(true);");
+                out.println("            return java.lang.invoke.MethodHandles.lookup().unreflectSetter(field);");
+                out.println("        } catch (ReflectiveOperationException e) {");
+                out.println("            throw new ExceptionInInitializerError(e);");
+                out.println("        }");
+                out.println("    }");
+            }
+            out.println("}");
+        } catch (IOException e) {
+            return error(entity, "Unable to write " + mapperName + ": " + e.getMessage());
+        }
+        return mapperName;
+    }
+
+    private MappedField mappedField(TypeElement entity, VariableElement field, String column) {
+        TypeMirror type = field.asType();
+        String typeName = type.toString();
+        boolean isEnum = type.getKind() == TypeKind.DECLARED
+                && ((DeclaredType) type).asElement().getKind() == ElementKind.ENUM;
+        String support = SUPPORTED_TYPES.get(typeName);
+        if (support == null && !isEnum) {
+            error(field, "Unsupported column type " + typeName);
+            return null;
+        }
+        String name = field.getSimpleName().toString();
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        String getter = null;
+        String setter = null;
+        for (ExecutableElement method : ElementFilter.methodsIn(entity.getEnclosedElements())) {
+            Set<Modifier> modifiers = method.getModifiers();
+            if (!modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.STATIC)) continue;
+            String methodName = method.getSimpleName().toString();
+            boolean sameType = processingEnv.getTypeUtils().isSameType(method.getReturnType(), type);
+            if (method.getParameters().isEmpty() && sameType && getter == null
+                    && (methodName.equals("get" + capitalized) || methodName.equals("is" + capitalized) || methodName.equals(name))) {
+                getter = methodName;
+            }
+            if (methodName.equals("set" + capitalized) && method.getParameters().size() == 1
+                    && processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), type)) {
+                setter = methodName;
+            }
+        }
+        if (getter == null) {
+            error(field, "No public getter of " + name);
+            return null;
+        }
+        return new MappedField(field, column, typeName, support, isEnum, getter, setter);
+    }
+
+    // the public constructor taking most of the mapped fields, every parameter named and typed like one of them
+    private ExecutableElement pickConstructor(TypeElement entity, List<MappedField> fields) {
+        ExecutableElement picked = null;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(entity.getEnclosedElements())) {
+            if (!constructor.getModifiers().contains(Modifier.PUBLIC)) continue;
+            boolean matches = true;
+            for (VariableElement parameter : constructor.getParameters()) {
+                int index = indexOf(fields, parameter.getSimpleName().toString());
+                if (index < 0 || !processingEnv.getTypeUtils().isSameType(parameter.asType(), fields.get(index).field().asType())) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches && (picked == null || constructor.getParameters().size() > picked.getParameters().size())) {
+                picked = constructor;
+            }
+        }
+        return picked;
+    }
+
+    private static String readExpression(MappedField field, int index) {
+        if (field.isEnum()) {
+            return "MapperSupport.readEnum(rs, columnIndexes[" + index + "], " + field.type() + ".class)";
+        }
+        return "MapperSupport.read" + field.support() + "(rs, columnIndexes[" + index + "])";
+    }
+
+    private static int indexOf(List<MappedField> fields, String name) {
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i).name().equals(name)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Statements of the @SQL and @MultiSql annotated methods, @MultiSql entries winning like in RepositoryMetadata.
+     * @return SQL by CrudOperation constant name
+     */
+    private static Map<String, String> collectSql(TypeElement repository) {
+        Map<String, String> sql = new LinkedHashMap<>();
+        List<ExecutableElement> methods = ElementFilter.methodsIn(repository.getEnclosedElements());
+        for (ExecutableElement method : methods) {
+            AnnotationMirror multiSql = annotation(method, MULTI_SQL);
+            if (multiSql == null) continue;
+            @SuppressWarnings("unchecked")
+            List<? extends AnnotationValue> entries = (List<? extends AnnotationValue>) annotationValue(multiSql, "value");
+            for (AnnotationValue entry : entries) {
+                putSql(sql, (AnnotationMirror) entry.getValue());
+            }
+        }
+        for (ExecutableElement method : methods) {
+            AnnotationMirror single = annotation(method, SQL);
+            if (single != null) putSql(sql, single);
+        }
+        return sql;
+    }
+
+    private static void putSql(Map<String, String> sql, AnnotationMirror annotation) {
+        VariableElement operation = (VariableElement) annotationValue(annotation, "operationType");
+        sql.putIfAbsent(operation.getSimpleName().toString(), (String) annotationValue(annotation, "value"));
+    }
+
+    private void writeRegistry(Map<String, String> mappers, Map<TypeElement, Map<String, String>> sqlByRepository) {
+        try (PrintWriter out = new PrintWriter(processingEnv.getFiler()
+                .createSourceFile(TARGET_PACKAGE + "." + REGISTRY, sqlByRepository.keySet().toArray(new Element[0])).openWriter())) {
+            out.println("package " + TARGET_PACKAGE + ";");
+            out.println();
+            out.println("/**");
+            out.println(" * Mappers and @SQL statements known at compile time, RepositoryMetadata falls back to reflection for the rest.");
+            out.println(" */");
+            out.println(GENERATED);
+            out.println("final class " + REGISTRY + " {");
+            out.println();
+            out.println("    private " + REGISTRY + "() {");
+            out.println("    }");
+            out.println();
+            out.println("    /**");
+            out.println("     * @return the generated mapper of a @Table entity, null for other classes");
+            out.println("     */");
+            out.println("    static EntityMapper<?> mapper(Class<?> entityClass) {");
+            for (Map.Entry<String, String> mapper : mappers.entrySet()) {
+                out.println("        if (entityClass == " + mapper.getKey() + ".class) return " + mapper.getValue() + ".INSTANCE;");
+            }
+            out.println("        return null;");
+            out.println("    }");
+            out.println();
+            out.println("    /**");
+            out.println("     * @return the repository classes declaring statements with @SQL/@MultiSql");
+            out.println("     */");
+            out.println("    static java.util.List<Class<?>> repositoryClasses() {");
+            StringJoiner repositories = new StringJoiner(", ", "java.util.List.of(", ")");
+            for (TypeElement repository : sqlByRepository.keySet()) {
+                repositories.add(repository.getQualifiedName() + ".class");
+            }
+            out.println("        return " + repositories + ";");
+            out.println("    }");
+            out.println();
+            out.println("    /**");
+            out.println("     * @return the statements declared with @SQL/@MultiSql on the methods of the class, null when none are known");
+            out.println("     */");
+            out.println("    static java.util.Map<com.jionek.peopledb.model.CrudOperation, String> sql(Class<?> repositoryClass) {");
+            for (Map.Entry<TypeElement, Map<String, String>> repository : sqlByRepository.entrySet()) {
+                out.println("        if (repositoryClass == " + repository.getKey().getQualifiedName() + ".class) {");
+                out.println("            java.util.Map<com.jionek.peopledb.model.CrudOperation, String> sql = new java.util.EnumMap<>(com.jionek.peopledb.model.CrudOperation.class);");
+                for (Map.Entry<String, String> statement : repository.getValue().entrySet()) {
+                    out.println("            sql.put(com.jionek.peopledb.model.CrudOperation." + statement.getKey() + ", " + literal(statement.getValue()) + ");");
+                }
+                out.println("            return sql;");
+                out.println("        }");
+            }
+            out.println("        return null;");
+            out.println("    }");
+            out.println("}");
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write " + REGISTRY + ": " + e.getMessage());
+        }
+    }
+
+    private static AnnotationMirror annotation(Element element, String annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private static Object annotationValue(AnnotationMirror annotation, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : annotation.getElementValues().entrySet()) {
+            if (value.getKey().getSimpleName().contentEquals(name)) return value.getValue().getValue();
+        }
+        return null;
+    }
+
+    private static String literal(String value) {
+        StringBuilder literal = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> literal.append("\\\"");
+                case '\\' -> literal.append("\\\\");
+                case '\n' -> literal.append("\\n");
+                case '\r' -> literal.append("\\r");
+                case '\t' -> literal.append("\\t");
+                default -> {
+                    if (c < 0x20 || c > 0x7e) {
+                        literal.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        literal.append(c);
+                    }
+                }
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    private <T> T error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+        return null;
+    }
+}
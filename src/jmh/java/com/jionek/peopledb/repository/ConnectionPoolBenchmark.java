@@ -0,0 +1,60 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.Person;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * save + findById throughput of one PeopleRepository over a ConnectionPool of POOL_SIZE connections,
+ * from one thread and from as many threads as connections, to show how the pooled repository scales.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionPoolBenchmark {
+    private static final int POOL_SIZE = 4;
+    private static final ZonedDateTime DOB = ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0"));
+
+    private H2TestDatabase database;
+    private ConnectionPool pool;
+    private PeopleRepository repo;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = new H2TestDatabase("poolbenchmark");
+        pool = new ConnectionPool(database.dataSource(), POOL_SIZE);
+        repo = new PeopleRepository(pool);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        repo.close();
+        pool.close();
+        database.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Optional<Person> saveAndFindOneThread() {
+        return saveAndFind();
+    }
+
+    @Benchmark
+    @Threads(POOL_SIZE)
+    public Optional<Person> saveAndFindPoolSizeThreads() {
+        return saveAndFind();
+    }
+
+    private Optional<Person> saveAndFind() {
+        Person saved = repo.save(new Person("John", "Smith", DOB));
+        return repo.findById(saved.getId());
+    }
+}
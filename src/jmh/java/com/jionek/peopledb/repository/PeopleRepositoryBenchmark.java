@@ -0,0 +1,151 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.Address;
+import com.jionek.peopledb.model.Person;
+import com.jionek.peopledb.model.Region;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PeopleRepository hot paths against in-memory H2, with the PEOPLE table preloaded with `rows` people.
+ * The graph benchmarks also run per number of children.
+ * Deletes consume people saved ahead in batches of REFILL_SIZE, so they include a small share of batch inserts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PeopleRepositoryBenchmark {
+    private static final ZonedDateTime DOB = ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0"));
+    private static final int REFILL_SIZE = 1000;
+    private static final int VARARGS_DELETE_SIZE = 10;
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    private H2TestDatabase database;
+    private PeopleRepository repo;
+    private Person updated;
+    private final Deque<Person> deletable = new ArrayDeque<>();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = new H2TestDatabase("benchmark");
+        repo = new PeopleRepository(database.dataSource());
+        List<Person> people = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            people.add(person("John" + i));
+        }
+        repo.saveAll(people);
+        updated = people.get(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        repo.close();
+        database.close();
+    }
+
+    @Benchmark
+    public Person saveSimple() {
+        return repo.save(person("Jane"));
+    }
+
+    @Benchmark
+    public Person saveGraph(Family family) {
+        return repo.save(family.graph());
+    }
+
+    @Benchmark
+    public Optional<Person> findByIdWithChildren(Family family) {
+        return repo.findById(family.saved.getId());
+    }
+
+    @Benchmark
+    public List<Person> findAll() {
+        return repo.findAll();
+    }
+
+    @Benchmark
+    public long count() {
+        return repo.count();
+    }
+
+    @Benchmark
+    public void deleteOne() {
+        repo.delete(nextDeletable());
+    }
+
+    @Benchmark
+    public void deleteVarargs() {
+        Person[] people = new Person[VARARGS_DELETE_SIZE];
+        for (int i = 0; i < people.length; i++) {
+            people[i] = nextDeletable();
+        }
+        repo.delete(people);
+    }
+
+    @Benchmark
+    public void update() {
+        updated.setSalary(updated.getSalary().add(BigDecimal.ONE));
+        repo.update(updated);
+    }
+
+    private Person nextDeletable() {
+        if (deletable.isEmpty()) {
+            List<Person> people = new ArrayList<>(REFILL_SIZE);
+            for (int i = 0; i < REFILL_SIZE; i++) {
+                people.add(person("Doomed" + i));
+            }
+            deletable.addAll(repo.saveAll(people));
+        }
+        return deletable.poll();
+    }
+
+    /**
+     * A person with two addresses, a spouse and `children` children, only used by the graph benchmarks.
+     */
+    @State(Scope.Benchmark)
+    public static class Family {
+        @Param({"0", "10"})
+        public int children;
+
+        private Person saved;
+
+        @Setup(Level.Trial)
+        public void setUp(PeopleRepositoryBenchmark benchmark) {
+            saved = benchmark.repo.save(graph());
+        }
+
+        private Person graph() {
+            Person person = person("John");
+            person.setHomeAddress(address("123 Beale St."));
+            person.setBusinessAddress(address("1 Market St."));
+            person.setSpouse(person("Joan"));
+            for (int i = 0; i < children; i++) {
+                person.addChild(person("Child" + i));
+            }
+            return person;
+        }
+    }
+
+    private static Person person(String firstName) {
+        return new Person(null, firstName, "Smith", DOB, new BigDecimal("73000.00"));
+    }
+
+    private static Address address(String street) {
+        return new Address(null, street, "Apt. 1a", "Wala Wala", "WA", "90210", "Fulton County", Region.WEST, "United States");
+    }
+}
@@ -0,0 +1,143 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.Address;
+import com.jionek.peopledb.model.Person;
+import com.jionek.peopledb.model.Region;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+import java.util.stream.Stream;
+
+/**
+ * Filter and aggregate scans over `rows` people, held as a PeopleSnapshot versus as the List<Person> they
+ * were saved from. For memory, the gc.alloc.rate.norm of loadSnapshot and loadPeople (the jmh task runs
+ * with -prof gc) gives the bytes allocated reading all of PEOPLE either way, and the columnBytes counter
+ * the size of the snapshot's columns.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class PeopleSnapshotBenchmark {
+    private static final ZonedDateTime FROM = ZonedDateTime.of(1980, 1, 1, 0, 0, 0, 0, ZoneId.of("+0"));
+    private static final ZonedDateTime TO = ZonedDateTime.of(1990, 1, 1, 0, 0, 0, 0, ZoneId.of("+0"));
+    private static final int ADDRESSES = 1000;
+
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    private H2TestDatabase database;
+    private PeopleRepository repo;
+    private List<Person> people;
+    private PeopleSnapshot snapshot;
+    private IntPredicate westSmithsOfThe80s;
+
+    /**
+     * Reported next to countSnapshot, as a number of bytes rather than a rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long columnBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        // saved once each with the first person pointing at them, people share them by index
+        Address[] addresses = new Address[ADDRESSES];
+        for (int i = 0; i < ADDRESSES; i++) {
+            addresses[i] = new Address(null, i + " Beale St.", null, "Wala Wala", "WA", "90210", "Fulton County",
+                    Region.values()[i % Region.values().length], "United States");
+        }
+        people = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            Person person = new Person("John" + i % 1000, i % 2 == 0 ? "Smith" : "Jones",
+                    ZonedDateTime.of(1960 + i % 40, 6, 15, 12, 0, 0, 0, ZoneId.of("+0")));
+            person.setSalary(BigDecimal.valueOf(30_000 + i % 50_000, 0));
+            person.setHomeAddress(addresses[i % ADDRESSES]);
+            people.add(person);
+        }
+        database = new H2TestDatabase("snapshotbenchmark");
+        repo = new PeopleRepository(database.dataSource());
+        repo.saveAll(people);
+        snapshot = repo.snapshot();
+        westSmithsOfThe80s = snapshot.homeRegionIs(Region.WEST)
+                .and(snapshot.lastNameIs("Smith"))
+                .and(snapshot.bornBetween(FROM, TO));
+        // both sides must do the same work
+        long expected = countList();
+        long matched = snapshot.count(westSmithsOfThe80s);
+        if (expected == 0 || matched != expected) {
+            throw new IllegalStateException("Snapshot matches %d people, the list %d".formatted(matched, expected));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        repo.close();
+        database.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public PeopleSnapshot loadSnapshot() {
+        return repo.snapshot();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public void loadPeople(Blackhole blackhole) {
+        try (Stream<Person> all = repo.streamAll()) {
+            blackhole.consume(all.toList());
+        }
+    }
+
+    @Benchmark
+    public long countList() {
+        return people.stream()
+                .filter(PeopleSnapshotBenchmark::westSmithOfThe80s)
+                .count();
+    }
+
+    @Benchmark
+    public long countParallelList() {
+        return people.parallelStream()
+                .filter(PeopleSnapshotBenchmark::westSmithOfThe80s)
+                .count();
+    }
+
+    @Benchmark
+    public long countSnapshot(Footprint footprint) {
+        footprint.columnBytes = snapshot.columnBytes();
+        return snapshot.count(westSmithsOfThe80s);
+    }
+
+    @Benchmark
+    public BigDecimal salarySumList() {
+        return people.parallelStream()
+                .filter(PeopleSnapshotBenchmark::westSmithOfThe80s)
+                .map(Person::getSalary)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    @Benchmark
+    public PersonStats salaryStatsSnapshot() {
+        return snapshot.salaryStats(westSmithsOfThe80s);
+    }
+
+    private static boolean westSmithOfThe80s(Person person) {
+        return person.getHomeAddress().map(address -> address.region() == Region.WEST).orElse(false)
+                && person.getLastName().equals("Smith")
+                && !person.getDob().isBefore(FROM) && person.getDob().isBefore(TO);
+    }
+}
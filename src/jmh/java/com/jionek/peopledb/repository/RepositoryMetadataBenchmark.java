@@ -0,0 +1,94 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.annotation.Id;
+import com.jionek.peopledb.annotation.MultiSql;
+import com.jionek.peopledb.annotation.SQL;
+import com.jionek.peopledb.model.CrudOperation;
+import com.jionek.peopledb.model.Person;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Field;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Per-call overhead removed by RepositoryMetadata: the reflective SQL and ID lookups CrudRepository did
+ * on every call against the precompiled ones.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryMetadataBenchmark {
+    private final Person person = new Person(1L, "John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+    private final RepositoryMetadata metadata = RepositoryMetadata.of(PeopleRepository.class);
+    private long id = 2L;
+
+    @Benchmark
+    public String reflectiveSqlLookup() {
+        return reflectiveSql(PeopleRepository.class, CrudOperation.UPDATE);
+    }
+
+    @Benchmark
+    public String metadataSqlLookup() {
+        return metadata.sql(CrudOperation.UPDATE);
+    }
+
+    @Benchmark
+    public long reflectiveIdGetSet() {
+        reflectiveSetId(person, ++id);
+        return reflectiveGetId(person);
+    }
+
+    @Benchmark
+    public long metadataIdGetSet() {
+        metadata.setId(person, ++id);
+        return metadata.getId(person);
+    }
+
+    // The lookups CrudRepository did on every call before RepositoryMetadata
+
+    private static String reflectiveSql(Class<?> repositoryClass, CrudOperation operationType) {
+        Stream<SQL> multiSqlStream = Arrays.stream(repositoryClass.getDeclaredMethods())
+                .filter(method -> method.isAnnotationPresent(MultiSql.class))
+                .map(method -> method.getAnnotation(MultiSql.class))
+                .flatMap(multiSql -> Arrays.stream(multiSql.value()));
+        Stream<SQL> sqlStream = Arrays.stream(repositoryClass.getDeclaredMethods())
+                .filter(method -> method.isAnnotationPresent(SQL.class))
+                .map(method -> method.getAnnotation(SQL.class));
+        return Stream.concat(multiSqlStream, sqlStream)
+                .filter(annotation -> annotation.operationType().equals(operationType))
+                .map(SQL::value)
+                .findFirst().orElseThrow();
+    }
+
+    private static void reflectiveSetId(Object entity, Long id) {
+        Arrays.stream(entity.getClass().getDeclaredFields())
+                .filter(field -> field.isAnnotationPresent(Id.class))
+                .forEach(field -> {
+                    field.setAccessible(true);
+                    try {
+                        field.set(entity, id);
+                    } catch (IllegalAccessException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+    }
+
+    private static long reflectiveGetId(Object entity) {
+        Field field = Arrays.stream(entity.getClass().getDeclaredFields())
+                .filter(f -> f.isAnnotationPresent(Id.class))
+                .findFirst().orElseThrow();
+        field.setAccessible(true);
+        try {
+            return (long) field.get(entity);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
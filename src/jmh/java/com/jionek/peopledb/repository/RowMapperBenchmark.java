@@ -0,0 +1,106 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.Person;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding all `rows` of a STREAM_ALL_SQL result set from H2, with the old per-column metadata scan and
+ * boxing getObject against the compiled row mapper.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowMapperBenchmark {
+    @Param("100000")
+    private int rows;
+
+    private H2TestDatabase database;
+    private PeopleRepository repo;
+    private Connection connection;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = new H2TestDatabase("rowmapper");
+        repo = new PeopleRepository(database.dataSource());
+        connection = database.dataSource().getConnection();
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            Person person = new Person("John" + i, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0")));
+            person.setSalary(new BigDecimal("73000.00"));
+            people.add(person);
+        }
+        repo.saveAll(people);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        connection.close();
+        repo.close();
+        database.close();
+    }
+
+    @Benchmark
+    public void aliasScan(Blackhole blackhole) throws SQLException {
+        Map<String, Integer> aliasColIdxMap = new HashMap<>();
+        try (PreparedStatement ps = connection.prepareStatement(PeopleRepository.STREAM_ALL_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                blackhole.consume(decodeByAlias(rs, aliasColIdxMap));
+            }
+        }
+    }
+
+    @Benchmark
+    public void compiledMapper(Blackhole blackhole) throws SQLException {
+        try (PreparedStatement ps = connection.prepareStatement(PeopleRepository.STREAM_ALL_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                blackhole.consume(repo.extractEntityFromRow(rs));
+            }
+        }
+    }
+
+    // How PeopleRepository decoded rows before compiled row mappers
+
+    private static Person decodeByAlias(ResultSet rs, Map<String, Integer> aliasColIdxMap) throws SQLException {
+        Long id = getValueByAlias("P_ID", rs, Long.class, aliasColIdxMap);
+        String firstName = getValueByAlias("P_FIRST_NAME", rs, String.class, aliasColIdxMap);
+        String lastName = getValueByAlias("P_LAST_NAME", rs, String.class, aliasColIdxMap);
+        ZonedDateTime dob = ZonedDateTime.of(getValueByAlias("P_DOB", rs, LocalDateTime.class, aliasColIdxMap), ZoneId.of("+0"));
+        BigDecimal salary = getValueByAlias("P_SALARY", rs, BigDecimal.class, aliasColIdxMap);
+        return new Person(id, firstName, lastName, dob, salary);
+    }
+
+    private static <T> T getValueByAlias(String alias, ResultSet rs, Class<T> clazz, Map<String, Integer> aliasColIdxMap) throws SQLException {
+        int columnCount = rs.getMetaData().getColumnCount();
+        Integer foundIdx = aliasColIdxMap.getOrDefault(alias, 0);
+        if (foundIdx == 0) {
+            for (int colIdx = 1; colIdx <= columnCount; colIdx++) {
+                if (alias.equals(rs.getMetaData().getColumnLabel(colIdx))) {
+                    foundIdx = colIdx;
+                    aliasColIdxMap.put(alias, foundIdx);
+                    break;
+                }
+            }
+        }
+        return foundIdx == 0 ? null : rs.getObject(foundIdx, clazz);
+    }
+}
@@ -0,0 +1,39 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.CrudOperation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of timing one statement, with metrics off, with HistogramMetrics, and run from several threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatementProbeBenchmark {
+    private final HistogramMetrics histogramMetrics = new HistogramMetrics();
+
+    @Benchmark
+    public void disabled() {
+        try (StatementProbe probe = new StatementProbe(RepositoryMetrics.NONE, CrudOperation.FIND_BY_ID, PeopleRepository.class)) {
+            probe.completed(1);
+        }
+    }
+
+    @Benchmark
+    public void histogram() {
+        try (StatementProbe probe = new StatementProbe(histogramMetrics, CrudOperation.FIND_BY_ID, PeopleRepository.class)) {
+            probe.completed(1);
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void histogramContended() {
+        histogram();
+    }
+}
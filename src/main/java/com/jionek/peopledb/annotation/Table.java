@@ -0,0 +1,16 @@
+package com.jionek.peopledb.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an entity stored in the named table. The annotation processor generates its EntityMapper
+ * from the @Id field and the @Column fields.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Table {
+    String value();
+}
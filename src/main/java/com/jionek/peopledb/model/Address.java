@@ -1,19 +1,30 @@
 package com.jionek.peopledb.model;
 
+import com.jionek.peopledb.annotation.Column;
 import com.jionek.peopledb.annotation.Id;
+import com.jionek.peopledb.annotation.Table;
 
 import java.util.Objects;
 
+@Table("ADDRESSES")
 public final class Address {
     @Id
     private final Long id;
+    @Column("STREET_ADDRESS")
     private final String streetAddress;
+    @Column("ADDRESS2")
     private final String address2;
+    @Column("CITY")
     private final String city;
+    @Column("STATE")
     private final String state;
+    @Column("POSTCODE")
     private final String postcode;
+    @Column("COUNTY")
     private final String county;
+    @Column("REGION")
     private final Region region;
+    @Column("COUNTRY")
     private final String country;
 
     public Address(
@@ -0,0 +1,15 @@
+package com.jionek.peopledb.model;
+
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Fetches the associations of a Person that was read without them, on the first get of each.
+ * Implementations are expected to load an association for many people at once, not just the one asked for.
+ */
+public interface AssociationLoader {
+    Optional<Person> loadSpouse(Person person);
+    Set<Person> loadChildren(Person person);
+    Optional<Address> loadHomeAddress(Person person);
+    Optional<Address> loadBusinessAddress(Person person);
+}
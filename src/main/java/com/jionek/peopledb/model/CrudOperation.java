@@ -4,7 +4,12 @@ public enum CrudOperation {
     SAVE,
     UPDATE,
     FIND_BY_ID,
+    FIND_ALL_BY_ID,
     FIND_ALL,
+    STREAM_ALL,
+    FIND_PAGE,
+    FIND_BY_CRITERIA,
+    AGGREGATE,
     COUNT,
     DELETE_ONE,
     DELETE_MANY
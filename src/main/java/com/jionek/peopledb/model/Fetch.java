@@ -0,0 +1,11 @@
+package com.jionek.peopledb.model;
+
+/**
+ * Associations of a Person a read joins in, see PeopleRepository.findById(Long, Fetch...).
+ */
+public enum Fetch {
+    SPOUSE,
+    CHILDREN,
+    /** home and business address */
+    ADDRESSES
+}
@@ -0,0 +1,14 @@
+package com.jionek.peopledb.model;
+
+import java.util.List;
+
+/**
+ * One page of a keyset paginated read.
+ * @param nextCursor ID to pass as afterId for the next page, null when this is the last page
+ */
+public record Page<T>(List<T> content, Long nextCursor) {
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
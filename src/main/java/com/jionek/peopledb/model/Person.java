@@ -1,30 +1,42 @@
 package com.jionek.peopledb.model;
 
+import com.jionek.peopledb.annotation.Column;
 import com.jionek.peopledb.annotation.Id;
+import com.jionek.peopledb.annotation.Table;
 
 import java.math.BigDecimal;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 
+@Table("PEOPLE")
 public class Person{
     @Id
     private Long id;
 
+    @Column("FIRST_NAME")
     private String firstName;
+    @Column("LAST_NAME")
     private String lastName;
+    @Column("DOB")
     private ZonedDateTime dob;
+    @Column("SALARY")
     private BigDecimal salary;
+    @Column("EMAIL")
     private String email;
     private Optional<Address> homeAddress = Optional.empty();
     private Optional<Address> businessAddress = Optional.empty();
     private Optional<Person> spouse = Optional.empty();
     private Set<Person> children = new HashSet<>();
     private Optional<Person> parent = Optional.empty();
-
+    private AssociationLoader associationLoader;
+    // associations still to be fetched through associationLoader, setting one explicitly takes it off
+    private final EnumSet<Association> unloaded = EnumSet.noneOf(Association.class);
 
     public Person (String firstName, String lastName, ZonedDateTime dob) {
         this.firstName = firstName;
@@ -84,25 +96,55 @@ public class Person{
 
     public void setHomeAddress(Address homeAddress) {
         this.homeAddress = Optional.ofNullable(homeAddress);
+        unloaded.remove(Association.HOME_ADDRESS);
     }
     public Optional<Address> getHomeAddress() {
+        if (unloaded.contains(Association.HOME_ADDRESS)) {
+            homeAddress = associationLoader.loadHomeAddress(this);
+            unloaded.remove(Association.HOME_ADDRESS);
+        }
         return homeAddress;
     }
 
     public void setBusinessAddress(Address bizAddress) {
         this.businessAddress = Optional.ofNullable(bizAddress);
+        unloaded.remove(Association.BUSINESS_ADDRESS);
     }
     public Optional<Address> getBusinessAddress() {
+        if (unloaded.contains(Association.BUSINESS_ADDRESS)) {
+            businessAddress = associationLoader.loadBusinessAddress(this);
+            unloaded.remove(Association.BUSINESS_ADDRESS);
+        }
         return businessAddress;
     }
 
     public void setSpouse(Person spouse) {
         this.spouse = Optional.ofNullable(spouse);
+        unloaded.remove(Association.SPOUSE);
     }
     public Optional<Person> getSpouse() {
+        if (unloaded.contains(Association.SPOUSE)) {
+            spouse = associationLoader.loadSpouse(this);
+            unloaded.remove(Association.SPOUSE);
+        }
         return spouse;
     }
 
+    /**
+     * Makes spouse, children and addresses lazy: each is fetched through loader on its first get,
+     * unless it was set before. Children added before the first getChildren() are kept next to the loaded ones.
+     * Like the rest of Person, not meant to be used from several threads at once.
+     * @param loader null to stop loading, associations not loaded yet then stay empty
+     */
+    public void setAssociationLoader(AssociationLoader loader) {
+        this.associationLoader = loader;
+        if (loader == null) {
+            unloaded.clear();
+        } else {
+            unloaded.addAll(EnumSet.allOf(Association.class));
+        }
+    }
+
     @Override
     public String toString() {
         return "Person{" +
@@ -129,12 +171,30 @@ public class Person{
         child.setParent(this);
     }
     public Set<Person> getChildren() {
+        if (unloaded.contains(Association.CHILDREN)) {
+            for (Person child : associationLoader.loadChildren(this)) {
+                addChild(child);
+            }
+            unloaded.remove(Association.CHILDREN);
+        }
         return children;
     }
+    /**
+     * Replaces the children, setting their parent to this person.
+     */
+    public void setChildren(Collection<Person> children) {
+        this.children.clear();
+        unloaded.remove(Association.CHILDREN);
+        for (Person child : children) {
+            addChild(child);
+        }
+    }
     public void setParent(Person parent) {
         this.parent = Optional.ofNullable(parent);
     }
     public Optional<Person> getParent() {
         return parent;
     }
+
+    private enum Association { SPOUSE, CHILDREN, HOME_ADDRESS, BUSINESS_ADDRESS }
 }
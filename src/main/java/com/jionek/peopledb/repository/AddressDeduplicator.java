@@ -0,0 +1,234 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.exception.UnableToSaveException;
+import com.jionek.peopledb.model.Address;
+import com.jionek.peopledb.model.CrudOperation;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Saves addresses content addressed: an address whose normalized fields hash to the CONTENT_HASH of an existing
+ * row gets that row's ID instead of a new row. Known hashes are kept in a bounded LRU index, the rest are looked up
+ * with one query per chunk of hashes, so a batch import costs no query per row.
+ * Hashes are indexed only once the rows are committed, a rolled back insert never leaves an ID behind.
+ * Needs the unique CONTENT_HASH column: ALTER TABLE ADDRESSES ADD CONTENT_HASH CHAR(64) UNIQUE
+ */
+final class AddressDeduplicator {
+    static final String FIND_BY_HASH_SQL = "SELECT CONTENT_HASH, ID FROM ADDRESSES WHERE CONTENT_HASH IN(:ids)";
+    private static final char FIELD_SEPARATOR = '\u001F';
+
+    private final AddressRepository repository;
+    private final int maxIndexSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Long> idsByHash = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder indexHits = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+
+    AddressDeduplicator(AddressRepository repository, int maxIndexSize) {
+        if (maxIndexSize < 1) throw new IllegalArgumentException("Index size must be positive, got: " + maxIndexSize);
+        this.repository = repository;
+        this.maxIndexSize = maxIndexSize;
+    }
+
+    /**
+     * Gives every address without an ID the ID of its content, inserting only contents not saved before.
+     */
+    void saveAll(Collection<Address> addresses, int batchSize) {
+        Map<String, List<Address>> byHash = new LinkedHashMap<>();
+        for (Address address : addresses) {
+            if (address.id() == null) {
+                byHash.computeIfAbsent(contentHash(address), hash -> new ArrayList<>()).add(address);
+            }
+        }
+        List<String> unknown = new ArrayList<>();
+        for (Map.Entry<String, List<Address>> group : byHash.entrySet()) {
+            Long id = indexed(group.getKey());
+            if (id != null) {
+                assign(group.getValue(), id);
+            } else {
+                unknown.add(group.getKey());
+            }
+        }
+        if (unknown.isEmpty()) return;
+
+        try (Session session = repository.source.open()) {
+            List<String> toInsert = assignExisting(session, byHash, unknown);
+            try {
+                for (int from = 0; from < toInsert.size(); from += batchSize) {
+                    insert(session, byHash, toInsert.subList(from, Math.min(from + batchSize, toInsert.size())));
+                }
+            } catch (UnableToSaveException e) {
+                if (!isConstraintViolation(e)) throw e;
+                // someone else saved one of the contents meanwhile, settle the rest one by one
+                for (String hash : assignExisting(session, byHash, toInsert)) {
+                    insertOrAssign(session, byHash, hash);
+                }
+            }
+        }
+    }
+
+    static String contentHash(Address address) {
+        StringBuilder content = new StringBuilder();
+        for (Object field : new Object[]{address.streetAddress(), address.address2(), address.city(), address.state(),
+                address.postcode(), address.county(), address.region(), address.country()}) {
+            content.append(normalize(field)).append(FIELD_SEPARATOR);
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // case, surrounding and repeated whitespace don't make a different address
+    private static String normalize(Object field) {
+        if (field == null) return "";
+        return field.toString().strip().replaceAll("\\s+", " ").toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the hashes not in the database yet
+     */
+    private List<String> assignExisting(Session session, Map<String, List<Address>> byHash, List<String> hashes) {
+        Map<String, Long> existing = findIdsByHash(session, hashes);
+        List<String> missing = new ArrayList<>();
+        for (String hash : hashes) {
+            Long id = existing.get(hash);
+            if (id != null) {
+                assign(byHash.get(hash), id);
+                index(session, hash, id);
+            } else {
+                missing.add(hash);
+            }
+        }
+        return missing;
+    }
+
+    private Map<String, Long> findIdsByHash(Session session, List<String> hashes) {
+        Map<String, Long> ids = new HashMap<>();
+        for (int from = 0; from < hashes.size(); from += IdBuckets.MAX_SIZE) {
+            List<String> chunk = hashes.subList(from, Math.min(from + IdBuckets.MAX_SIZE, hashes.size()));
+            int bucket = IdBuckets.bucketFor(chunk.size());
+            try (StatementProbe probe = repository.probe(CrudOperation.FIND_ALL_BY_ID)) {
+                PreparedStatement ps = session.prepare(CrudOperation.FIND_ALL_BY_ID, IdBuckets.expand(FIND_BY_HASH_SQL, bucket));
+                for (int i = 0; i < bucket; i++) {
+                    ps.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                }
+                int rows = 0;
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        ids.put(rs.getString(1), rs.getLong(2));
+                        rows++;
+                    }
+                }
+                probe.completed(rows);
+                lookups.increment();
+            } catch (SQLException e) {
+                throw new UnableToSaveException("Unable to look up addresses by content", e);
+            }
+        }
+        return ids;
+    }
+
+    private void insert(Session session, Map<String, List<Address>> byHash, List<String> hashes) {
+        List<Address> firsts = hashes.stream().map(hash -> byHash.get(hash).get(0)).toList();
+        repository.insertBatch(firsts);
+        for (String hash : hashes) {
+            List<Address> group = byHash.get(hash);
+            Long id = group.get(0).id();
+            assign(group, id);
+            index(session, hash, id);
+        }
+    }
+
+    private void insertOrAssign(Session session, Map<String, List<Address>> byHash, String hash) {
+        try {
+            insert(session, byHash, List.of(hash));
+        } catch (UnableToSaveException e) {
+            if (!isConstraintViolation(e) || !assignExisting(session, byHash, List.of(hash)).isEmpty()) throw e;
+        }
+    }
+
+    private void assign(List<Address> group, Long id) {
+        for (Address address : group) {
+            if (address.id() == null) repository.setIdByAnnotation(id, address);
+        }
+    }
+
+    private Long indexed(String hash) {
+        lock.lock();
+        try {
+            Long id = idsByHash.get(hash);
+            if (id != null) indexHits.increment();
+            return id;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void index(Session session, String hash, Long id) {
+        session.afterCommit(() -> {
+            lock.lock();
+            try {
+                idsByHash.put(hash, id);
+                if (idsByHash.size() > maxIndexSize) {
+                    Iterator<String> eldest = idsByHash.keySet().iterator();
+                    eldest.next();
+                    eldest.remove();
+                }
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Forgets all hashes, their rows may be gone.
+     */
+    void clear() {
+        lock.lock();
+        try {
+            idsByHash.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int indexSize() {
+        lock.lock();
+        try {
+            return idsByHash.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long indexHits() {
+        return indexHits.sum();
+    }
+
+    long lookups() {
+        return lookups.sum();
+    }
+
+    private static boolean isConstraintViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException) {
+                for (SQLException next = sqlException; next != null; next = next.getNextException()) {
+                    String state = next.getSQLState();
+                    if (state != null && state.startsWith("23")) return true;
+                }
+            }
+        }
+        return false;
+    }
+}
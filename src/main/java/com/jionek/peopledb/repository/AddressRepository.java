@@ -1,61 +1,187 @@
 package com.jionek.peopledb.repository;
 
 import com.jionek.peopledb.annotation.SQL;
+import com.jionek.peopledb.exception.UnableToSaveException;
 import com.jionek.peopledb.model.Address;
 import com.jionek.peopledb.model.CrudOperation;
-import com.jionek.peopledb.model.Region;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
 
 public class AddressRepository extends CrudRepository<Address> {
+    public static final String SAVE_WITH_CONTENT_HASH_SQL = """
+            INSERT INTO ADDRESSES (STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY, CONTENT_HASH)
+            VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+    public static final String UPDATE_WITH_CONTENT_HASH_SQL = """
+            UPDATE ADDRESSES SET STREET_ADDRESS=?, ADDRESS2=?, CITY=?, STATE=?, POSTCODE=?, COUNTY=?, REGION=?, COUNTRY=?,
+            CONTENT_HASH=? WHERE ID=?
+            """;
+    private static final AddressEntityMapper MAPPER = AddressEntityMapper.INSTANCE;
+    // result set index of each mapped column, per query shape
+    private static final RowMapperCache<int[]> ROW_MAPPERS = new RowMapperCache<>(labels -> MAPPER.columnIndexes(labels, ""));
+
+    private volatile AddressDeduplicator deduplicator;
 
     public AddressRepository(Connection connection) {
         super(connection);
     }
 
+    public AddressRepository(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    public AddressRepository(ConnectionPool pool) {
+        super(pool);
+    }
+
+    AddressRepository(ConnectionSource source) {
+        super(source, false);
+    }
+
+    /**
+     * Saves each distinct address content once: addresses equal after trimming, collapsing whitespace and
+     * ignoring case get the ID of the row saved first, see AddressDeduplicator. Needs the unique
+     * CONTENT_HASH column on ADDRESSES, rows saved without dedup have none and are never reused.
+     * @param maxIndexSize number of content hashes kept in memory, older ones are looked up again
+     */
+    public void enableDeduplication(int maxIndexSize) {
+        deduplicator = new AddressDeduplicator(this, maxIndexSize);
+    }
+
+    public void disableDeduplication() {
+        deduplicator = null;
+    }
+
+    @Override
+    public Address save(Address entity) throws UnableToSaveException {
+        if (deduplicator == null) return super.save(entity);
+        saveAll(List.of(entity), 1);
+        return entity;
+    }
+
+    @Override
+    public List<Address> saveAll(Collection<Address> entities, int batchSize) throws UnableToSaveException {
+        AddressDeduplicator dedup = deduplicator;
+        if (dedup == null) return super.saveAll(entities, batchSize);
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be positive, got: " + batchSize);
+        dedup.saveAll(entities, batchSize);
+        return new ArrayList<>(entities);
+    }
+
+    /**
+     * Also drops the dedup index, it may point at the deleted rows.
+     */
+    @Override
+    public void delete(Address entity) {
+        super.delete(entity);
+        AddressDeduplicator dedup = deduplicator;
+        if (dedup != null) dedup.clear();
+    }
+
+    @Override
+    public int delete(Address... entities) {
+        int deleted = super.delete(entities);
+        AddressDeduplicator dedup = deduplicator;
+        if (dedup != null) dedup.clear();
+        return deleted;
+    }
+
+    /**
+     * With deduplication on, also rehashes the row and drops the dedup index once committed, it may still
+     * map the old content to this row. The row may be shared by several people, they all see the change.
+     */
     @Override
+    public void update(Address entity) {
+        AddressDeduplicator dedup = deduplicator;
+        if (dedup == null) {
+            super.update(entity);
+            return;
+        }
+        try (Session session = source.open()) {
+            super.update(entity);
+            session.afterCommit(dedup::clear);
+        }
+    }
+
+    @Override
+    public int updateAll(Collection<Address> entities) {
+        AddressDeduplicator dedup = deduplicator;
+        if (dedup == null) return super.updateAll(entities);
+        try (Session session = source.open()) {
+            int updated = super.updateAll(entities);
+            session.afterCommit(dedup::clear);
+            return updated;
+        }
+    }
+
+    @Override
+    String sqlFor(CrudOperation operationType, Supplier<String> sqlGetter) {
+        if (operationType == CrudOperation.SAVE && deduplicator != null) return SAVE_WITH_CONTENT_HASH_SQL;
+        if (operationType == CrudOperation.UPDATE && deduplicator != null) return UPDATE_WITH_CONTENT_HASH_SQL;
+        return super.sqlFor(operationType, sqlGetter);
+    }
+
+    AddressDeduplicator deduplicator() {
+        return deduplicator;
+    }
+
+    @Override
+    @SQL(operationType = CrudOperation.STREAM_ALL, value = """
+            SELECT ID, STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY
+            FROM ADDRESSES
+            """)
+    @SQL(operationType = CrudOperation.FIND_PAGE, value = """
+            SELECT ID, STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY
+            FROM ADDRESSES
+            WHERE ID > ?
+            ORDER BY ID
+            LIMIT ?
+            """)
+    @SQL(operationType = CrudOperation.FIND_ALL_BY_ID, value = """
+            SELECT ID, STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY
+            FROM ADDRESSES
+            WHERE ID IN(:ids)
+            """)
     @SQL(operationType = CrudOperation.FIND_BY_ID, value = """
             SELECT ID, STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY
             FROM ADDRESSES
             WHERE ID = ?
             """)
     Address extractEntityFromResultSet(ResultSet rs) throws SQLException {
-
-        long id = rs.getLong("ID");
-        String streetAddress = rs.getString("STREET_ADDRESS");
-        String address2 = rs.getString("ADDRESS2");
-        String city = rs.getString("CITY");
-        String state = rs.getString("STATE");
-        String postcode = rs.getString("POSTCODE");
-        String county = rs.getString("COUNTY");
-        Region region = Region.valueOf(rs.getString("REGION").toUpperCase());
-        String country = rs.getString("COUNTRY");
-        return new Address(id, streetAddress, address2, city, state, postcode, county, region, country);
+        return MAPPER.read(rs, ROW_MAPPERS.mapperFor(rs));
     }
 
-
     @Override
     @SQL(operationType = CrudOperation.SAVE, value = """
             INSERT INTO ADDRESSES (STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, REGION, COUNTRY)
             VALUES(?, ?, ?, ?, ?, ?, ?, ?)
             """)
     void mapForSave(Address entity, PreparedStatement ps) throws SQLException {
-        ps.setString(1, entity.streetAddress());
-        ps.setString(2, entity.address2());
-        ps.setString(3, entity.city());
-        ps.setString(4, entity.state());
-        ps.setString(5, entity.postcode());
-        ps.setString(6, entity.county());
-        ps.setString(7, entity.region().name());
-        ps.setString(8, entity.country());
+        int next = MAPPER.bindColumns(entity, ps, 1);
+        if (deduplicator != null) {
+            ps.setString(next, AddressDeduplicator.contentHash(entity));
+        }
     }
 
     @Override
     void mapForUpdate(Address entity, PreparedStatement ps) throws SQLException {
+        int next = MAPPER.bindColumns(entity, ps, 1);
+        if (deduplicator != null) {
+            ps.setString(next, AddressDeduplicator.contentHash(entity));
+        }
+    }
 
+    @Override
+    protected String getUpdateSql() {
+        return MAPPER.updateSql();
     }
 
 }
@@ -0,0 +1,221 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.exception.DataException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * CompletableFuture facade over a repository, the blocking JDBC calls run on virtual threads,
+ * at most maxConcurrency at a time. Before Java 21 they run on a fixed pool of maxConcurrency daemon
+ * platform threads instead, calls beyond that wait in its queue rather than on threads of their own.
+ * <p>
+ * findByIdAsync calls arriving within coalesceWindow of each other go out as one findAllById,
+ * and concurrent countAsync calls share one COUNT query. Writes are not coalesced, one caller's
+ * failing entity would otherwise fail everybody else's save.
+ */
+public final class AsyncRepository<T> implements AutoCloseable {
+    public static final int DEFAULT_MAX_CONCURRENCY = ConnectionPool.DEFAULT_MAX_SIZE;
+    public static final Duration DEFAULT_COALESCE_WINDOW = Duration.ofMillis(1);
+
+    private record PendingLookup<T>(Long id, CompletableFuture<Optional<T>> result) { }
+
+    private final CrudRepository<T> repository;
+    // null with the fixed pool, its size is the limit
+    private final Semaphore permits;
+    private final long coalesceWindowNanos;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(daemon("async-repository-flusher"));
+    private final ReentrantLock lock = new ReentrantLock();
+    private List<PendingLookup<T>> pendingLookups = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private CompletableFuture<Long> runningCount;
+
+    public AsyncRepository(CrudRepository<T> repository) {
+        this(repository, DEFAULT_MAX_CONCURRENCY, DEFAULT_COALESCE_WINDOW);
+    }
+
+    /**
+     * @param repository DataSource or ConnectionPool based, the calls run on many threads
+     * @param maxConcurrency repository calls running at once, keep it at most the pool size
+     * @param coalesceWindow how long findByIdAsync waits for more IDs, zero turns coalescing off
+     */
+    public AsyncRepository(CrudRepository<T> repository, int maxConcurrency, Duration coalesceWindow) {
+        if (repository.source instanceof SingleConnectionSource) {
+            throw new IllegalArgumentException("Async calls need a DataSource or ConnectionPool based repository, a single connection can't be shared between threads");
+        }
+        if (maxConcurrency < 1) throw new IllegalArgumentException("Max concurrency must be positive, got: " + maxConcurrency);
+        if (coalesceWindow.isNegative()) throw new IllegalArgumentException("Coalesce window can't be negative, got: " + coalesceWindow);
+        this.repository = repository;
+        this.coalesceWindowNanos = coalesceWindow.toNanos();
+        ExecutorService virtualThreads = newVirtualThreadExecutor();
+        if (virtualThreads != null) {
+            this.executor = virtualThreads;
+            this.permits = new Semaphore(maxConcurrency, true);
+        } else {
+            this.executor = Executors.newFixedThreadPool(maxConcurrency, daemon("async-repository"));
+            this.permits = null;
+        }
+    }
+
+    public CompletableFuture<T> saveAsync(T entity) {
+        return run(() -> repository.save(entity));
+    }
+
+    public CompletableFuture<Optional<T>> findByIdAsync(Long id) {
+        if (coalesceWindowNanos == 0) return run(() -> repository.findById(id));
+        CompletableFuture<Optional<T>> result = new CompletableFuture<>();
+        List<PendingLookup<T>> full = null;
+        lock.lock();
+        try {
+            pendingLookups.add(new PendingLookup<>(id, result));
+            if (pendingLookups.size() >= IdBuckets.MAX_SIZE) {
+                full = takePendingLookups();
+            } else if (pendingLookups.size() == 1) {
+                scheduledFlush = flusher.schedule(this::flushPendingLookups, coalesceWindowNanos, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full != null) lookUp(full);
+        return result;
+    }
+
+    public CompletableFuture<List<T>> findAllByIdAsync(Collection<Long> ids) {
+        List<Long> copy = List.copyOf(ids);
+        return run(() -> repository.findAllById(copy));
+    }
+
+    /**
+     * Joins the COUNT query already running, if there is one.
+     */
+    public CompletableFuture<Long> countAsync() {
+        lock.lock();
+        try {
+            if (runningCount == null || runningCount.isDone()) {
+                runningCount = run(repository::count);
+            }
+            return runningCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public CompletableFuture<Void> deleteAsync(T entity) {
+        return run(() -> {
+            repository.delete(entity);
+            return null;
+        });
+    }
+
+    /**
+     * Sends the coalesced lookups still waiting, and stops the threads once the calls already made are done.
+     * The repository stays open.
+     */
+    @Override
+    public void close() {
+        flushPendingLookups();
+        flusher.shutdown();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushPendingLookups() {
+        List<PendingLookup<T>> batch;
+        lock.lock();
+        try {
+            batch = takePendingLookups();
+        } finally {
+            lock.unlock();
+        }
+        if (!batch.isEmpty()) lookUp(batch);
+    }
+
+    private List<PendingLookup<T>> takePendingLookups() {
+        List<PendingLookup<T>> batch = pendingLookups;
+        pendingLookups = new ArrayList<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void lookUp(List<PendingLookup<T>> batch) {
+        List<Long> ids = batch.stream().map(PendingLookup::id).toList();
+        run(() -> repository.findAllById(ids)).whenComplete((entities, failure) -> {
+            if (failure != null) {
+                batch.forEach(lookup -> lookup.result().completeExceptionally(failure));
+                return;
+            }
+            Map<Long, T> byId = new HashMap<>();
+            for (T entity : entities) {
+                byId.put(repository.getIdByAnnotation(entity), entity);
+            }
+            batch.forEach(lookup -> lookup.result().complete(Optional.ofNullable(byId.get(lookup.id()))));
+        });
+    }
+
+    private <R> CompletableFuture<R> run(Supplier<R> call) {
+        if (permits == null) return CompletableFuture.supplyAsync(call, executor);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DataException("Interrupted waiting for a connection slot", e);
+            }
+            try {
+                return call.get();
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    /**
+     * @return null when virtual threads are not available
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            MethodHandle factory = MethodHandles.publicLookup().findStatic(Executors.class,
+                    "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+            return (ExecutorService) factory.invokeExact();
+        } catch (NoSuchMethodException | IllegalAccessException | UnsupportedOperationException e) {
+            // before Java 21, or 19/20 without --enable-preview
+            return null;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Unable to create virtual thread executor", e);
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,164 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.exception.DataException;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lightweight pool of connections over a DataSource, each connection with its own statement cache.
+ * At most maxSize connections are borrowed at once, other threads wait on a Semaphore
+ * (no synchronized blocks, so waiting virtual threads don't pin their carrier).
+ * A thread holding a connection gets the same one back on nested open() calls. Sessions are kept by the thread
+ * that borrowed them, so one released on another thread, i.e. by closing a stream there, leaves that thread's own alone.
+ */
+public final class ConnectionPool implements ConnectionSource {
+    public static final int DEFAULT_MAX_SIZE = 10;
+    public static final Duration DEFAULT_ACQUIRE_TIMEOUT = Duration.ofSeconds(30);
+
+    private final DataSource dataSource;
+    private final int maxSize;
+    private final int statementCacheSize;
+    private final long acquireTimeoutNanos;
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<Session> idle = new ConcurrentLinkedDeque<>();
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<Thread, Session> current = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    public ConnectionPool(DataSource dataSource) {
+        this(dataSource, DEFAULT_MAX_SIZE, CrudRepository.DEFAULT_STATEMENT_CACHE_SIZE, DEFAULT_ACQUIRE_TIMEOUT);
+    }
+
+    public ConnectionPool(DataSource dataSource, int maxSize) {
+        this(dataSource, maxSize, CrudRepository.DEFAULT_STATEMENT_CACHE_SIZE, DEFAULT_ACQUIRE_TIMEOUT);
+    }
+
+    public ConnectionPool(DataSource dataSource, int maxSize, int statementCacheSize, Duration acquireTimeout) {
+        if (maxSize < 1) throw new IllegalArgumentException("Pool size must be positive, got: " + maxSize);
+        this.dataSource = dataSource;
+        this.maxSize = maxSize;
+        this.statementCacheSize = statementCacheSize;
+        this.acquireTimeoutNanos = acquireTimeout.toNanos();
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    @Override
+    public Session open() {
+        Thread thread = Thread.currentThread();
+        Session session = current.get(thread);
+        // fails when another thread has just closed it for good
+        if (session != null && session.tryEnter()) return session;
+        session = borrow();
+        session.borrowedBy(thread);
+        current.put(thread, session);
+        return session.enter();
+    }
+
+    @Override
+    public void release(Session session) {
+        current.remove(session.owner(), session);
+        if (closed || !reset(session)) {
+            discard(session);
+        } else {
+            idle.offerFirst(session);
+        }
+        permits.release();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return number of physical connections currently opened by the pool, borrowed or idle
+     */
+    public int getOpenConnections() {
+        return sessions.size();
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    @Override
+    public StatementCacheStats statementCacheStats() {
+        long hits = 0, misses = 0, evictions = 0;
+        int size = 0;
+        for (Session session : sessions) {
+            StatementCacheStats stats = session.statements().stats();
+            hits += stats.hits();
+            misses += stats.misses();
+            evictions += stats.evictions();
+            size += stats.size();
+        }
+        return new StatementCacheStats(hits, misses, evictions, size, statementCacheSize * maxSize);
+    }
+
+    /**
+     * Closes idle connections right away, borrowed ones are closed when they come back.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Session session;
+        while ((session = idle.pollFirst()) != null) {
+            discard(session);
+        }
+    }
+
+    private Session borrow() {
+        if (closed) throw new DataException("Connection pool is closed");
+        try {
+            if (!permits.tryAcquire(acquireTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new DataException("Timed out waiting for a connection, all %d are in use".formatted(maxSize));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataException("Interrupted while waiting for a connection", e);
+        }
+        try {
+            Session session;
+            while ((session = idle.pollFirst()) != null) {
+                if (!session.connection().isClosed()) return session;
+                discard(session);
+            }
+            session = new Session(this, dataSource.getConnection(), new StatementCache(statementCacheSize));
+            sessions.add(session);
+            return session;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            if (e instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new DataException("Unable to open connection", e);
+        }
+    }
+
+    // a connection left in a transaction (e.g. by an exception) is rolled back before reuse
+    private static boolean reset(Session session) {
+        try {
+            if (session.connection().isClosed()) return false;
+            if (!session.connection().getAutoCommit()) {
+                session.connection().rollback();
+                session.connection().setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(Session session) {
+        sessions.remove(session);
+        session.statements().close();
+        try {
+            session.connection().close();
+        } catch (SQLException ignored) {
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.jionek.peopledb.repository;
+
+/**
+ * Where repositories get their connections from. Every operation opens a Session and closes it when done;
+ * a thread that already has an open Session gets the same one back, so nested repository calls and
+ * transactions share one connection.
+ */
+interface ConnectionSource extends AutoCloseable {
+
+    Session open();
+
+    /**
+     * Called by the Session once its outermost user closed it.
+     */
+    void release(Session session);
+
+    StatementCacheStats statementCacheStats();
+
+    @Override
+    void close();
+}
@@ -1,182 +1,739 @@
 package com.jionek.peopledb.repository;
 
-import com.jionek.peopledb.annotation.Id;
-import com.jionek.peopledb.annotation.MultiSql;
-import com.jionek.peopledb.annotation.SQL;
 import com.jionek.peopledb.exception.DataException;
 import com.jionek.peopledb.exception.UnableToSaveException;
 import com.jionek.peopledb.model.CrudOperation;
+import com.jionek.peopledb.model.Page;
 
+import javax.sql.DataSource;
 import java.sql.*;
+import java.time.Duration;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import static java.util.stream.Collectors.joining;
+abstract class CrudRepository<T> implements AutoCloseable {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 32;
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+    /**
+     * Fetch size asking for the driver's row streaming mode, on MySQL that is Integer.MIN_VALUE (one row at a time).
+     * Other drivers get DEFAULT_FETCH_SIZE.
+     */
+    public static final int STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
 
-abstract class CrudRepository<T> {
-    protected Connection connection;
-    private PreparedStatement savePS;
+    private final RepositoryMetadata metadata = RepositoryMetadata.of(getClass());
+    final ConnectionSource source;
+    private final boolean ownsSource;
+    private volatile EntityCache<T> entityCache;
+    private volatile RepositoryMetrics metrics = RepositoryMetrics.NONE;
 
+    /**
+     * Repository working on the caller's connection. Like the connection, it must stay on one thread.
+     */
     public CrudRepository(Connection connection) {
-        try {
-            this.connection = connection;
-            savePS = connection.prepareStatement(getSqlByAnnotation(CrudOperation.SAVE, this::getSaveSql), Statement.RETURN_GENERATED_KEYS);
-        } catch (SQLException e) {
-            throw new DataException("Unable to create prepared statement for CrudRepository", e);
-        }
+        this(connection, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    protected CrudRepository(Connection connection, int statementCacheSize) {
+        this(new SingleConnectionSource(connection, statementCacheSize), true);
+    }
+
+    /**
+     * Thread-safe repository borrowing connections from its own ConnectionPool over the DataSource.
+     */
+    public CrudRepository(DataSource dataSource) {
+        this(new ConnectionPool(dataSource), true);
+    }
+
+    /**
+     * Thread-safe repository borrowing connections from a pool shared with other repositories.
+     */
+    public CrudRepository(ConnectionPool pool) {
+        this(pool, false);
+    }
+
+    CrudRepository(ConnectionSource source, boolean ownsSource) {
+        this.source = source;
+        this.ownsSource = ownsSource;
     }
 
 
     public T save(T entity) throws UnableToSaveException {
-        try {
-            mapForSave(entity, savePS);
-            int recordsAffected = savePS.executeUpdate();
-            ResultSet rs = savePS.getGeneratedKeys();
-            while (rs.next()){
-                long id = rs.getLong(1);
+        try (Session session = source.open()) {
+            preSave(entity);
+            Long id = null;
+            try (StatementProbe probe = probe(CrudOperation.SAVE)) {
+                PreparedStatement savePS = prepareSave(session);
+                mapForSave(entity, savePS);
+                int recordsAffected = savePS.executeUpdate();
+                try (ResultSet rs = savePS.getGeneratedKeys()) {
+                    if (rs.next()) {
+                        id = rs.getLong(1);
+                    }
+                }
+                probe.completed(recordsAffected);
+            }
+            // postSave may run the same statement again, so the keys are read first
+            if (id != null) {
                 setIdByAnnotation(id, entity);
+                trackedOnCommit(session, entity);
                 postSave(entity, id);
             }
-//            System.out.printf("Records affected: %d%n", recordsAffected);
         } catch (SQLException e) {
-            e.printStackTrace();
+            throw new UnableToSaveException("Unable to save " + entity, e);
         }
         return entity;
     }
 
+    public List<T> saveAll(Collection<T> entities) throws UnableToSaveException {
+        return saveAll(entities, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Saves entities through the SAVE statement using JDBC batching, one executeBatch per chunk.
+     * On MySQL the connection needs rewriteBatchedStatements=true, otherwise the driver still sends
+     * the rows one by one.
+     * @param batchSize max number of rows sent in one executeBatch
+     */
+    public List<T> saveAll(Collection<T> entities, int batchSize) throws UnableToSaveException {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be positive, got: " + batchSize);
+        List<T> chunk = new ArrayList<>(Math.min(batchSize, entities.size()));
+        for (T entity : entities) {
+            chunk.add(entity);
+            if (chunk.size() == batchSize) {
+                saveBatch(chunk);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            saveBatch(chunk);
+        }
+        return new ArrayList<>(entities);
+    }
+
+    private void saveBatch(List<T> chunk) {
+        try (Session session = source.open()) {
+            // nested saves must be done before the first row is added to the batch
+            for (T entity : chunk) {
+                preSave(entity);
+            }
+            insertBatch(chunk);
+            for (T entity : chunk) {
+                postSave(entity, getIdByAnnotation(entity));
+            }
+        }
+    }
+
+    /**
+     * Inserts the entities with one executeBatch of the SAVE statement and sets their generated IDs.
+     * No preSave/postSave, everything the entities reference must already be saved.
+     */
+    void insertBatch(List<T> chunk) {
+        long[] ids = new long[chunk.size()];
+        PreparedStatement savePS = null;
+        try (StatementProbe probe = probe(CrudOperation.SAVE);
+             Session session = source.open()) {
+            savePS = prepareSave(session);
+            for (T entity : chunk) {
+                mapForSave(entity, savePS);
+                savePS.addBatch();
+            }
+            savePS.executeBatch();
+            int idCount = 0;
+            try (ResultSet rs = savePS.getGeneratedKeys()) {
+                while (idCount < ids.length && rs.next()) {
+                    ids[idCount++] = rs.getLong(1);
+                }
+            }
+            if (idCount != ids.length) {
+                throw new UnableToSaveException("Expected %d generated keys, got %d".formatted(ids.length, idCount));
+            }
+            probe.completed(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                setIdByAnnotation(ids[i], chunk.get(i));
+                trackedOnCommit(session, chunk.get(i));
+            }
+        } catch (SQLException e) {
+            clearBatchQuietly(savePS);
+            throw new UnableToSaveException("Unable to save batch of %d entities".formatted(chunk.size()), e);
+        }
+    }
+
+    private static void clearBatchQuietly(PreparedStatement savePS) {
+        if (savePS == null) return;
+        try {
+            savePS.clearBatch();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    /**
+     * Looks the entity up in the current transaction's identity map, then in the entity cache when enabled,
+     * and only then runs FIND_BY_ID.
+     */
     public Optional<T> findById(Long id ) {
+        try (Session session = source.open()) {
+            T entity = findLoaded(session, id);
+            if (entity == null) {
+                entity = loadById(session, id);
+                if (entity != null) remember(session, id, entity);
+            }
+            return Optional.ofNullable(entity);
+        }
+    }
+
+    /**
+     * Batched findById: IDs not in the identity map or entity cache are fetched by FIND_ALL_BY_ID in chunks,
+     * each chunk padded up to one of the IdBuckets sizes. The result follows the order of ids;
+     * IDs that don't exist are left out.
+     */
+    public List<T> findAllById(Collection<Long> ids) {
+        Set<Long> distinctIds = new LinkedHashSet<>(ids);
+        Map<Long, T> found = new HashMap<>();
+        try (Session session = source.open()) {
+            List<Long> toLoad = new ArrayList<>();
+            for (Long id : distinctIds) {
+                T entity = findLoaded(session, id);
+                if (entity != null) {
+                    found.put(id, entity);
+                } else {
+                    toLoad.add(id);
+                }
+            }
+            for (int from = 0; from < toLoad.size(); from += IdBuckets.MAX_SIZE) {
+                List<Long> chunk = toLoad.subList(from, Math.min(from + IdBuckets.MAX_SIZE, toLoad.size()));
+                for (T entity : loadAllById(session, chunk)) {
+                    Long id = getIdByAnnotation(entity);
+                    found.put(id, entity);
+                    remember(session, id, entity);
+                }
+            }
+        }
+        List<T> entities = new ArrayList<>(found.size());
+        for (Long id : distinctIds) {
+            T entity = found.get(id);
+            if (entity != null) entities.add(entity);
+        }
+        return entities;
+    }
+
+    private List<T> loadAllById(Session session, List<Long> ids) {
+        List<T> entities = new ArrayList<>(ids.size());
+        int bucket = IdBuckets.bucketFor(ids.size());
+
+        try (StatementProbe probe = probe(CrudOperation.FIND_ALL_BY_ID)) {
+            // scrollable, extractEntityFromResultSet steps back after reading the first row of the next entity
+            PreparedStatement ps = session.prepare(CrudOperation.FIND_ALL_BY_ID,
+                    IdBuckets.expand(sqlFor(CrudOperation.FIND_ALL_BY_ID, this::getFindAllByIdSql), bucket),
+                    sql -> session.connection().prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY));
+            IdBuckets.bind(ps, ids, bucket);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    entities.add(tracked(extractEntityFromResultSet(rs)));
+                }
+            }
+            probe.completed(entities.size());
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return entities;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T findLoaded(Session session, Long id) {
+        Map<Long, Object> identities = session.identityMap(metadata.entityClass());
+        T entity = identities == null ? null : (T) identities.get(id);
+        if (entity == null) {
+            EntityCache<T> cache = entityCache;
+            entity = cache == null ? null : cache.get(id);
+            if (entity != null && identities != null) identities.put(id, entity);
+        }
+        return entity;
+    }
+
+    private void remember(Session session, Long id, T entity) {
+        EntityCache<T> cache = entityCache;
+        if (cache != null) cache.put(id, entity);
+        Map<Long, Object> identities = session.identityMap(metadata.entityClass());
+        if (identities != null) identities.put(id, entity);
+    }
+
+    /**
+     * findById with another statement of the same shape, bypassing the identity map and entity cache,
+     * whose entities may have been read with a different statement.
+     */
+    Optional<T> findByIdUsing(Long id, String sql) {
+        try (Session session = source.open()) {
+            return Optional.ofNullable(loadById(session, id, sql));
+        }
+    }
+
+    private T loadById(Session session, Long id) {
+        return loadById(session, id, sqlFor(CrudOperation.FIND_BY_ID, this::getfindByIdSql));
+    }
+
+    private T loadById(Session session, Long id, String sql) {
         T entity = null;
 
-        try {
-            PreparedStatement ps = connection.prepareStatement(getSqlByAnnotation(CrudOperation.FIND_BY_ID, this::getfindByIdSql));
+        try (StatementProbe probe = probe(CrudOperation.FIND_BY_ID)) {
+            PreparedStatement ps = session.prepare(CrudOperation.FIND_BY_ID, sql);
             ps.setLong(1, id);
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()){
-                entity = extractEntityFromResultSet(rs);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()){
+                    entity = tracked(extractEntityFromResultSet(rs));
+                }
             }
+            probe.completed(entity == null ? 0 : 1);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
-        return Optional.ofNullable(entity);
+        return entity;
     }
 
     public List<T> findAll() {
+        return findAllUsing(sqlFor(CrudOperation.FIND_ALL, this::getFindAllSql));
+    }
+
+    /**
+     * findAll with another statement, rows of one entity must come one after another.
+     */
+    List<T> findAllUsing(String findAllSql) {
         List<T> entities = new ArrayList<>();
 
-        try {
-            PreparedStatement ps = connection.prepareStatement(
-                    getSqlByAnnotation(CrudOperation.FIND_ALL, this::getFindAllSql),
-                    ResultSet.TYPE_SCROLL_INSENSITIVE,
-                    ResultSet.CONCUR_READ_ONLY);
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) {
-                entities.add(extractEntityFromResultSet(rs));
+        try (StatementProbe probe = probe(CrudOperation.FIND_ALL);
+             Session session = source.open()) {
+            PreparedStatement ps = session.prepare(CrudOperation.FIND_ALL, findAllSql,
+                    sql -> session.connection().prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    entities.add(tracked(extractEntityFromResultSet(rs)));
+                }
             }
+            probe.completed(entities.size());
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
         return entities;
     }
 
-    public long count() {
-        long count = 0;
+    public Stream<T> streamAll() {
+        return streamAll(STREAMING_FETCH_SIZE);
+    }
 
+    /**
+     * Lazily maps the STREAM_ALL query through a forward-only cursor, so only fetchSize rows are held in memory.
+     * The returned stream must be closed, that closes its statement and gives the connection back.
+     * On MySQL a positive fetch size needs useCursorFetch=true, and in streaming mode no other statement
+     * can run on the connection until the stream is closed.
+     * Metrics time the stream from the query until it's closed and count the rows actually read.
+     */
+    public Stream<T> streamAll(int fetchSize) {
+        return streamUsing(CrudOperation.STREAM_ALL, sqlFor(CrudOperation.STREAM_ALL, this::getStreamAllSql), ps -> { }, fetchSize);
+    }
+
+    /**
+     * streamAll with another one row per entity query and its parameters. The statement is prepared for the
+     * stream alone, not taken from the statement cache, since it stays open until the stream is closed.
+     */
+    Stream<T> streamUsing(CrudOperation operationType, String sql, ParameterBinder binder, int fetchSize) {
+        return streamUsing(operationType, sql, binder, fetchSize, rs -> tracked(extractEntityFromRow(rs)));
+    }
+
+    /**
+     * Streams any query, each row mapped by reader.
+     */
+    <R> Stream<R> streamUsing(CrudOperation operationType, String sql, ParameterBinder binder, int fetchSize, RowReader<R> reader) {
+        StatementProbe probe = probe(operationType);
+        Session session = source.open();
+        PreparedStatement ps = null;
         try {
-            PreparedStatement ps = connection.prepareStatement(getSqlByAnnotation(CrudOperation.COUNT, this::getCountSql));
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                count = rs.getLong(1);
+            ps = session.connection().prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(resolveFetchSize(session, fetchSize));
+            binder.bind(ps);
+            return streamRows(session, ps, ps.executeQuery(), probe, reader);
+        } catch (SQLException | RuntimeException e) {
+            closeQuietly(ps);
+            session.close();
+            probe.close();
+            if (e instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new DataException("Unable to stream entities", e);
+        }
+    }
+
+    /**
+     * Reads all rows of a one row per entity query, through the statement cache.
+     */
+    List<T> findAllUsing(CrudOperation operationType, String sql, ParameterBinder binder) {
+        return queryUsing(operationType, sql, binder, rs -> tracked(extractEntityFromRow(rs)));
+    }
+
+    /**
+     * Reads all rows of any query through the statement cache, each row mapped by reader.
+     */
+    <R> List<R> queryUsing(CrudOperation operationType, String sql, ParameterBinder binder, RowReader<R> reader) {
+        List<R> rows = new ArrayList<>();
+
+        try (StatementProbe probe = probe(operationType);
+             Session session = source.open()) {
+            PreparedStatement ps = session.prepare(operationType, sql);
+            binder.bind(ps);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(reader.read(rs));
+                }
             }
+            probe.completed(rows.size());
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
-        return count;
+        return rows;
     }
 
-    public void delete(T entity) {
+    @FunctionalInterface
+    interface ParameterBinder {
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+
+    @FunctionalInterface
+    interface RowReader<R> {
+        R read(ResultSet rs) throws SQLException;
+    }
+
+    private static int resolveFetchSize(Session session, int fetchSize) throws SQLException {
+        if (fetchSize != STREAMING_FETCH_SIZE) return fetchSize;
+        return session.connection().getMetaData().getDatabaseProductName().contains("MySQL") ? STREAMING_FETCH_SIZE : DEFAULT_FETCH_SIZE;
+    }
+
+    private <R> Stream<R> streamRows(Session session, Statement ps, ResultSet rs, StatementProbe probe, RowReader<R> reader) {
+        Spliterator<R> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            private long rowsRead;
+            private boolean failed;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super R> action) {
+                R row;
+                try {
+                    if (!rs.next()) return false;
+                    row = reader.read(rs);
+                } catch (SQLException | RuntimeException e) {
+                    failed = true;
+                    probe.completed(-1);
+                    if (e instanceof RuntimeException runtimeException) throw runtimeException;
+                    throw new DataException("Unable to read next row", e);
+                }
+                if (!failed) probe.completed(++rowsRead);
+                action.accept(row);
+                return true;
+            }
+        };
+        probe.completed(0);
+        return StreamSupport.stream(rows, false)
+                .onClose(() -> {
+                    closeQuietly(rs);
+                    closeQuietly(ps);
+                    session.close();
+                    probe.close();
+                });
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) return;
         try {
-            PreparedStatement ps = connection.prepareStatement(getSqlByAnnotation(CrudOperation.DELETE_ONE, this::getDeleteSql));
-            ps.setLong(1, getIdByAnnotation(entity));
-            int recordsAffected = ps.executeUpdate();
-            System.out.println(recordsAffected);
+            closeable.close();
+        } catch (Exception ignored) {
+        }
+    }
+
+    public Page<T> findPage(Long afterId, int pageSize) {
+        if (pageSize < 1) throw new IllegalArgumentException("Page size must be positive, got: " + pageSize);
+        List<T> entities = new ArrayList<>(pageSize);
+        boolean hasNext = false;
+
+        try (StatementProbe probe = probe(CrudOperation.FIND_PAGE);
+             Session session = source.open()) {
+            PreparedStatement ps = prepare(session, CrudOperation.FIND_PAGE, this::getFindPageSql);
+            ps.setLong(1, afterId == null ? Long.MIN_VALUE : afterId);
+            ps.setInt(2, pageSize + 1);     // one extra row tells if there is a next page
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (entities.size() == pageSize) {
+                        hasNext = true;
+                        break;
+                    }
+                    entities.add(tracked(extractEntityFromRow(rs)));
+                }
+            }
+            probe.completed(entities.size());
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
+        Long nextCursor = hasNext ? getIdByAnnotation(entities.get(entities.size() - 1)) : null;
+        return new Page<>(entities, nextCursor);
     }
 
-    public void delete(T... entities) {
-        try {
-            Statement cs = connection.createStatement();
+    public long count() {
+        long count = 0;
 
-            String ids = Arrays.stream(entities)
-                    .map(entity -> getIdByAnnotation(entity))
-                    .map(id -> String.valueOf(id))
-                    .collect(joining(","));
+        try (StatementProbe probe = probe(CrudOperation.COUNT);
+             Session session = source.open()) {
+            PreparedStatement ps = prepare(session, CrudOperation.COUNT, this::getCountSql);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    count = rs.getLong(1);
+                }
+            }
+            probe.completed(1);
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return count;
+    }
 
-            int affectedRecordCount = cs.executeUpdate(getSqlByAnnotation(CrudOperation.DELETE_MANY, this::getDeleteInSql).replace(":ids", ids));// :ids is a named parameter
-            System.out.println(affectedRecordCount);
+    public void delete(T entity) {
+        try (StatementProbe probe = probe(CrudOperation.DELETE_ONE);
+             Session session = source.open()) {
+            Long id = getIdByAnnotation(entity);
+            evict(session, id);
+            PreparedStatement ps = prepare(session, CrudOperation.DELETE_ONE, this::getDeleteSql);
+            ps.setLong(1, id);
+            probe.completed(ps.executeUpdate());
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
-    
+
+    /**
+     * Deletes the entities in one transaction by DELETE_MANY, IDs bound as parameters in chunks of at most
+     * IdBuckets.MAX_SIZE, each chunk padded up to one of the IdBuckets sizes. However many entities,
+     * only those few statements get prepared, and they are reused from the statement cache.
+     * @return number of rows deleted
+     */
+    public int delete(T... entities) {
+        List<Long> ids = Arrays.stream(entities).map(this::getIdByAnnotation).distinct().toList();
+        if (ids.isEmpty()) return 0;
+        return inTransaction(() -> {
+            int affectedRecordCount = 0;
+            try (Session session = source.open()) {
+                for (int from = 0; from < ids.size(); from += IdBuckets.MAX_SIZE) {
+                    affectedRecordCount += deleteChunk(session, ids.subList(from, Math.min(from + IdBuckets.MAX_SIZE, ids.size())));
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            return affectedRecordCount;
+        });
+    }
+
+    private int deleteChunk(Session session, List<Long> ids) throws SQLException {
+        int bucket = IdBuckets.bucketFor(ids.size());
+        try (StatementProbe probe = probe(CrudOperation.DELETE_MANY)) {
+            ids.forEach(id -> evict(session, id));
+            PreparedStatement ps = session.prepare(CrudOperation.DELETE_MANY,
+                    IdBuckets.expand(sqlFor(CrudOperation.DELETE_MANY, this::getDeleteInSql), bucket));
+            IdBuckets.bind(ps, ids, bucket);
+            int affectedRecordCount = ps.executeUpdate();
+            probe.completed(affectedRecordCount);
+            return affectedRecordCount;
+        }
+    }
+
+    /**
+     * Writes the entity's columns back. With a dirty tracker only the columns changed since the entity was
+     * loaded or last written are set, and nothing is sent at all when none changed.
+     */
     public void update(T entity) {
-        try {
-            PreparedStatement ps = connection.prepareStatement(getSqlByAnnotation(CrudOperation.UPDATE, this::getUpdateSql));
-            mapForUpdate(entity, ps);
-            ps.setLong(5, getIdByAnnotation(entity));
-            ps.executeUpdate();
+        DirtyTracker<T> tracker = dirtyTracker();
+        long changedColumns = tracker == null ? -1 : tracker.changedColumns(entity);
+        if (changedColumns == 0) return;
+        try (StatementProbe probe = probe(CrudOperation.UPDATE);
+             Session session = source.open()) {
+            Long id = getIdByAnnotation(entity);
+            EntityCache<T> cache = entityCache;
+            if (cache != null) cache.invalidate(id);
+            PreparedStatement ps;
+            if (tracker == null) {
+                ps = prepare(session, CrudOperation.UPDATE, this::getUpdateSql);
+                mapForUpdate(entity, ps);
+                ps.setLong(ps.getParameterMetaData().getParameterCount(), id);     // the ID is the last parameter
+            } else {
+                ps = session.prepare(CrudOperation.UPDATE, tracker.updateSql(changedColumns));
+                tracker.bind(ps, entity, changedColumns, id);
+            }
+            probe.completed(ps.executeUpdate());
+            trackedOnCommit(session, entity);
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private String getSqlByAnnotation(CrudOperation operationType, Supplier<String> sqlGetter){
-        Stream<SQL> multiSqlStream = Arrays.stream(this.getClass().getDeclaredMethods())
-                .filter(method -> method.isAnnotationPresent(MultiSql.class))
-                .map(method -> method.getAnnotation(MultiSql.class))
-                .flatMap(multiSql -> Arrays.stream(multiSql.value()));
+    /**
+     * Updates the entities in one transaction. Entities changed in the same columns share one UPDATE
+     * sent as a JDBC batch, unchanged ones are skipped; without a dirty tracker all go in one batch.
+     * @return number of rows updated
+     */
+    public int updateAll(Collection<T> entities) {
+        DirtyTracker<T> tracker = dirtyTracker();
+        Map<Long, List<T>> byChangedColumns = new LinkedHashMap<>();
+        for (T entity : entities) {
+            long changedColumns = tracker == null ? -1 : tracker.changedColumns(entity);
+            if (changedColumns != 0) {
+                byChangedColumns.computeIfAbsent(changedColumns, columns -> new ArrayList<>()).add(entity);
+            }
+        }
+        if (byChangedColumns.isEmpty()) return 0;
+        return inTransaction(() -> {
+            int affectedRecordCount = 0;
+            try (Session session = source.open()) {
+                for (Map.Entry<Long, List<T>> group : byChangedColumns.entrySet()) {
+                    List<T> groupEntities = group.getValue();
+                    for (int from = 0; from < groupEntities.size(); from += DEFAULT_BATCH_SIZE) {
+                        affectedRecordCount += updateBatch(session, tracker, group.getKey(),
+                                groupEntities.subList(from, Math.min(from + DEFAULT_BATCH_SIZE, groupEntities.size())));
+                    }
+                }
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            return affectedRecordCount;
+        });
+    }
 
-        Stream<SQL> sqlStream = Arrays.stream(this.getClass().getDeclaredMethods())
-//                .filter(method -> methodName.contentEquals(method.getName()))
-                .filter(method -> method.isAnnotationPresent(SQL.class))
-                .map(method -> method.getAnnotation(SQL.class));
+    private int updateBatch(Session session, DirtyTracker<T> tracker, long changedColumns, List<T> entities) throws SQLException {
+        try (StatementProbe probe = probe(CrudOperation.UPDATE)) {
+            EntityCache<T> cache = entityCache;
+            PreparedStatement ps = tracker == null
+                    ? prepare(session, CrudOperation.UPDATE, this::getUpdateSql)
+                    : session.prepare(CrudOperation.UPDATE, tracker.updateSql(changedColumns));
+            int idIndex = tracker == null ? ps.getParameterMetaData().getParameterCount() : -1;
+            for (T entity : entities) {
+                Long id = getIdByAnnotation(entity);
+                if (cache != null) cache.invalidate(id);
+                if (tracker == null) {
+                    mapForUpdate(entity, ps);
+                    ps.setLong(idIndex, id);
+                } else {
+                    tracker.bind(ps, entity, changedColumns, id);
+                }
+                ps.addBatch();
+            }
+            int affectedRecordCount = 0;
+            for (int count : ps.executeBatch()) {
+                // drivers may only report that a row succeeded, without its count
+                affectedRecordCount += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+            }
+            for (T entity : entities) {
+                trackedOnCommit(session, entity);
+            }
+            probe.completed(affectedRecordCount);
+            return affectedRecordCount;
+        }
+    }
 
-        return Stream.concat(multiSqlStream, sqlStream)
-                .filter(annotation -> annotation.operationType().equals(operationType))
-                .map(SQL::value)
-                .findFirst().orElseGet(sqlGetter);
+    /**
+     * Runs work on one connection and commits when it returns, rolling back when it throws.
+     * Repository calls made by work on this thread, also on other repositories sharing the pool, join the transaction,
+     * and findById returns the same instance for the same ID for as long as the block runs.
+     * With a Connection based repository whose connection already has auto-commit off, the caller keeps
+     * control of the transaction and nothing is committed here.
+     */
+    public <R> R inTransaction(Supplier<R> work) {
+        try (Session session = source.open()) {
+            return session.inTransaction(work);
+        }
     }
 
-    private void setIdByAnnotation(Long id, T entity){
-        Arrays.stream(entity.getClass().getDeclaredFields())
-                .filter(field -> field.isAnnotationPresent(Id.class))
-                .forEach(field -> {
-                    field.setAccessible(true);
-                    try {
-                        field.set(entity, id);
-                    } catch (IllegalAccessException e) {
-                        throw new RuntimeException("Unable to set ID field value");
-                    }
-                });
+    public void inTransaction(Runnable work) {
+        inTransaction(() -> {
+            work.run();
+            return null;
+        });
     }
 
-    private Long getIdByAnnotation(T entity){
-        return Arrays.stream(entity.getClass().getDeclaredFields())
-                .filter(field -> field.isAnnotationPresent(Id.class))
-//                .map(field -> field.getAnnotation(Id.class))
-                .map(field -> {
-                    field.setAccessible(true);
-                    Long id = null;
-                    try {
-                        id = (long) field.get(entity);
-                    } catch (IllegalAccessException e) {
-                        throw new RuntimeException(e);
-                    }
-                    return id;
-                })
-                .findFirst().orElseThrow(() -> new RuntimeException("No ID annotated field founded."));
+    /**
+     * Turns on the read-through findById cache. Cached entities are shared between callers, and
+     * entries are dropped by update and delete on this repository; changes made elsewhere show up after ttl at the latest.
+     */
+    public void enableEntityCache(int maxSize, Duration ttl) {
+        entityCache = new EntityCache<>(maxSize, ttl);
+    }
+
+    public void disableEntityCache() {
+        entityCache = null;
+    }
+
+    /**
+     * @return counters of the findById cache, empty when it's not enabled
+     */
+    public Optional<EntityCacheStats> getEntityCacheStats() {
+        EntityCache<T> cache = entityCache;
+        return cache == null ? Optional.empty() : Optional.of(cache.stats());
+    }
+
+    private void evict(Session session, Long id) {
+        EntityCache<T> cache = entityCache;
+        if (cache != null) cache.invalidate(id);
+        Map<Long, Object> identities = session.identityMap(metadata.entityClass());
+        if (identities != null) identities.remove(id);
+    }
+
+    /**
+     * Reports every statement this repository runs to metrics, i.e. a HistogramMetrics.
+     * Each statement also emits a StatementExecutionEvent to JFR recordings, with or without metrics.
+     * @param metrics null or RepositoryMetrics.NONE to stop recording
+     */
+    public void setMetrics(RepositoryMetrics metrics) {
+        this.metrics = metrics == null ? RepositoryMetrics.NONE : metrics;
+    }
+
+    public RepositoryMetrics getMetrics() {
+        return metrics;
+    }
+
+    StatementProbe probe(CrudOperation operationType) {
+        return new StatementProbe(metrics, operationType, getClass());
+    }
+
+    public StatementCacheStats getStatementCacheStats() {
+        return source.statementCacheStats();
+    }
+
+    /**
+     * Closes the cached prepared statements, and the pool when the repository created it.
+     * A connection passed in by the caller stays open.
+     */
+    @Override
+    public void close() {
+        if (ownsSource) {
+            source.close();
+        }
+    }
+
+    private PreparedStatement prepare(Session session, CrudOperation operationType, Supplier<String> sqlGetter) throws SQLException {
+        return session.prepare(operationType, sqlFor(operationType, sqlGetter));
+    }
+
+    private PreparedStatement prepareSave(Session session) throws SQLException {
+        return session.prepare(CrudOperation.SAVE, sqlFor(CrudOperation.SAVE, this::getSaveSql),
+                sql -> session.connection().prepareStatement(sql, Statement.RETURN_GENERATED_KEYS));
+    }
+
+    /**
+     * SQL of an operation: the @SQL annotation's, else the getter's. Subclasses may pick another statement per call.
+     */
+    String sqlFor(CrudOperation operationType, Supplier<String> sqlGetter){
+        String sql = metadata.sql(operationType);
+        return sql != null ? sql : sqlGetter.get();
+    }
+
+    void setIdByAnnotation(Long id, T entity){
+        metadata.setId(entity, id);
+    }
+
+    Long getIdByAnnotation(T entity){
+        return metadata.getId(entity);
     }
 
     /**
@@ -185,9 +742,22 @@ abstract class CrudRepository<T> {
      * "DELETE FROM PEOPLE WHERE ID IN(:ids)"
      */
     protected String getDeleteInSql(){throw new RuntimeException("SQL not defined.");}
+    /**
+     *
+     * @return SQL selecting entities by a list of IDs, with the ":ids" named parameter, i.e.
+     * "SELECT ... FROM PEOPLE WHERE ID IN(:ids)". Rows of one entity must come one after another.
+     */
+    protected String getFindAllByIdSql(){throw new RuntimeException("SQL not defined.");}
     protected String getDeleteSql(){throw new RuntimeException("SQL not defined.");}
     protected String getCountSql(){throw new RuntimeException("SQL not defined.");}
     protected String getFindAllSql(){throw new RuntimeException("SQL not defined.");}
+    protected String getStreamAllSql(){throw new RuntimeException("SQL not defined.");}
+    /**
+     *
+     * @return SQL selecting one page ordered by ID, with two parameters: the ID to start after and the row limit, i.e.
+     * "SELECT ... FROM PEOPLE WHERE ID > ? ORDER BY ID LIMIT ?"
+     */
+    protected String getFindPageSql(){throw new RuntimeException("SQL not defined.");}
     protected String getSaveSql(){throw new RuntimeException("SQL not defined.");}
     protected String getUpdateSql(){throw new RuntimeException("SQL not defined.");}
     /**
@@ -196,9 +766,47 @@ abstract class CrudRepository<T> {
      * The SQL must contain one SQL parameter, i.e. "?" that will bind to the entity's ID.
      */
     protected String getfindByIdSql(){throw new RuntimeException("SQL not defined.");}
+    /**
+     * Called before the entity is bound to the SAVE statement, the place to save entities it references.
+     * Nested saves can't happen in mapForSave, they would run the same statement while it's being filled.
+     */
+    protected void preSave(T entity) { }
     protected void postSave(T entity, long id) { }
 
 
+    /**
+     * Column-level change tracking for update/updateAll, null (the default) writes all columns through mapForUpdate.
+     */
+    DirtyTracker<T> dirtyTracker() {
+        return null;
+    }
+
+    /**
+     * tracked(entity) with the entity's current values, once the running transaction commits. A write rolled back
+     * leaves the previous snapshot, so the entity still counts as changed.
+     */
+    private void trackedOnCommit(Session session, T entity) {
+        DirtyTracker<T> tracker = dirtyTracker();
+        if (tracker != null) session.afterCommit(tracker.deferredSnapshot(entity));
+    }
+
+    /**
+     * Marks the entity's current state as the one in the database.
+     */
+    T tracked(T entity) {
+        DirtyTracker<T> tracker = dirtyTracker();
+        if (tracker != null && entity != null) tracker.snapshot(entity);
+        return entity;
+    }
+
+    /**
+     * Maps the current row only, without moving the cursor. Used by forward-only reads, where
+     * extractEntityFromResultSet can't look ahead for rows belonging to the same entity.
+     */
+    T extractEntityFromRow(ResultSet rs) throws SQLException {
+        return extractEntityFromResultSet(rs);
+    }
+
     abstract T extractEntityFromResultSet(ResultSet rs) throws SQLException;
     abstract void mapForSave(T entity, PreparedStatement ps) throws SQLException;
     abstract void mapForUpdate(T entity, PreparedStatement ps) throws SQLException;
@@ -0,0 +1,141 @@
+package com.jionek.peopledb.repository;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Remembers the column values of entities as they were loaded from or written to the database,
+ * so UPDATE can set just the columns changed since. Snapshots are held per entity instance
+ * and go away with the entity. Entities without a snapshot count as changed in every column.
+ */
+final class DirtyTracker<T> {
+
+    /**
+     * @param value the value as bound to the statement, i.e. a Timestamp rather than a ZonedDateTime
+     * @param sqlType java.sql.Types constant used to bind nulls
+     */
+    record Column<T>(String name, Function<T, Object> value, int sqlType) { }
+
+    private static final class IdentityKey extends WeakReference<Object> {
+        private final int hash;
+
+        IdentityKey(Object entity, ReferenceQueue<Object> queue) {
+            super(entity, queue);
+            this.hash = System.identityHashCode(entity);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            return o instanceof IdentityKey other && get() != null && get() == other.get();
+        }
+    }
+
+    private final String table;
+    private final String idColumn;
+    private final List<Column<T>> columns;
+    private final long allColumns;
+    private final ConcurrentHashMap<IdentityKey, Object[]> snapshots = new ConcurrentHashMap<>();
+    private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    private final ConcurrentHashMap<Long, String> updateSqls = new ConcurrentHashMap<>();
+
+    DirtyTracker(String table, String idColumn, List<Column<T>> columns) {
+        if (columns.isEmpty() || columns.size() > Long.SIZE - 1) throw new IllegalArgumentException("Between 1 and 63 columns can be tracked, got: " + columns.size());
+        this.table = table;
+        this.idColumn = idColumn;
+        this.columns = List.copyOf(columns);
+        this.allColumns = (1L << columns.size()) - 1;
+    }
+
+    void snapshot(T entity) {
+        deferredSnapshot(entity).run();
+    }
+
+    /**
+     * Takes the entity's values now and remembers them when run, i.e. once the write that stored them commits.
+     */
+    Runnable deferredSnapshot(T entity) {
+        Object[] values = values(entity);
+        return () -> {
+            expungeCollected();
+            snapshots.put(new IdentityKey(entity, collected), values);
+        };
+    }
+
+    /**
+     * @return bit i set when column i differs from the snapshot, 0 when the entity is unchanged
+     */
+    long changedColumns(T entity) {
+        Object[] snapshot = snapshots.get(new IdentityKey(entity, null));
+        if (snapshot == null) return allColumns;
+        long changed = 0;
+        for (int i = 0; i < columns.size(); i++) {
+            if (!sameValue(snapshot[i], columns.get(i).value().apply(entity))) {
+                changed |= 1L << i;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return "UPDATE table SET A=?, B=? WHERE ID=?" for the changed columns, the ID being the last parameter
+     */
+    String updateSql(long changedColumns) {
+        return updateSqls.computeIfAbsent(changedColumns, mask -> {
+            StringJoiner assignments = new StringJoiner(", ");
+            for (int i = 0; i < columns.size(); i++) {
+                if ((mask & (1L << i)) != 0) assignments.add(columns.get(i).name() + "=?");
+            }
+            return "UPDATE %s SET %s WHERE %s=?".formatted(table, assignments, idColumn);
+        });
+    }
+
+    void bind(PreparedStatement ps, T entity, long changedColumns, Long id) throws SQLException {
+        int parameterIndex = 1;
+        for (int i = 0; i < columns.size(); i++) {
+            if ((changedColumns & (1L << i)) == 0) continue;
+            Column<T> column = columns.get(i);
+            Object value = column.value().apply(entity);
+            if (value == null) {
+                ps.setNull(parameterIndex++, column.sqlType());
+            } else {
+                ps.setObject(parameterIndex++, value, column.sqlType());
+            }
+        }
+        ps.setLong(parameterIndex, id);
+    }
+
+    private Object[] values(T entity) {
+        Object[] values = new Object[columns.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = columns.get(i).value().apply(entity);
+        }
+        return values;
+    }
+
+    // 73000.3 and 73000.30 are the same salary
+    private static boolean sameValue(Object snapshot, Object current) {
+        if (snapshot instanceof BigDecimal a && current instanceof BigDecimal b) return a.compareTo(b) == 0;
+        return Objects.equals(snapshot, current);
+    }
+
+    private void expungeCollected() {
+        Object key;
+        while ((key = collected.poll()) != null) {
+            snapshots.remove(key);
+        }
+    }
+}
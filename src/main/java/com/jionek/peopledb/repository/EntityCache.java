@@ -0,0 +1,108 @@
+package com.jionek.peopledb.repository;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Second-level cache of entities by ID, bounded by size (least recently used goes first) and by time to live.
+ * Guarded by a ReentrantLock rather than synchronized, the critical sections are just map operations.
+ */
+final class EntityCache<T> {
+
+    private record Entry<T>(T entity, long expiresAt) { }
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Long, Entry<T>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    EntityCache(int maxSize, Duration ttl) {
+        this(maxSize, ttl, System::nanoTime);
+    }
+
+    EntityCache(int maxSize, Duration ttl, LongSupplier clock) {
+        if (maxSize < 1) throw new IllegalArgumentException("Entity cache size must be positive, got: " + maxSize);
+        if (ttl.isNegative() || ttl.isZero()) throw new IllegalArgumentException("Entity cache TTL must be positive, got: " + ttl);
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.clock = clock;
+    }
+
+    T get(Long id) {
+        lock.lock();
+        try {
+            Entry<T> entry = entries.get(id);
+            if (entry != null && entry.expiresAt() - clock.getAsLong() <= 0) {
+                entries.remove(id);
+                expirations.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.entity();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void put(Long id, T entity) {
+        lock.lock();
+        try {
+            entries.put(id, new Entry<>(entity, clock.getAsLong() + ttlNanos));
+            Iterator<Entry<T>> eldest = entries.values().iterator();
+            while (entries.size() > maxSize) {
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void invalidate(Long id) {
+        lock.lock();
+        try {
+            if (entries.remove(id) != null) {
+                invalidations.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void clear() {
+        lock.lock();
+        try {
+            invalidations.add(entries.size());
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    EntityCacheStats stats() {
+        int size;
+        lock.lock();
+        try {
+            size = entries.size();
+        } finally {
+            lock.unlock();
+        }
+        return new EntityCacheStats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), invalidations.sum(), size, maxSize);
+    }
+}
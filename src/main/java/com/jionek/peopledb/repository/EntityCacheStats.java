@@ -0,0 +1,15 @@
+package com.jionek.peopledb.repository;
+
+/**
+ * Snapshot of a repository's findById cache counters.
+ * @param evictions entries pushed out because the cache was full
+ * @param expirations entries dropped because their time to live passed
+ * @param invalidations entries dropped by update or delete
+ */
+public record EntityCacheStats(long hits, long misses, long evictions, long expirations, long invalidations, int size, int maxSize) {
+
+    public double hitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+}
@@ -0,0 +1,61 @@
+package com.jionek.peopledb.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Straight-line mapping code of one entity, generated at compile time by the peopledb-processor
+ * from @Table, @Id and @Column, see GeneratedRepositoryMetadata.
+ * Columns are numbered like columns(): the ID first, then the @Column fields in declaration order.
+ */
+interface EntityMapper<T> {
+
+    /**
+     * @return column names, the ID column first
+     */
+    String[] columns();
+
+    Long getId(T entity);
+
+    /**
+     * Sets the ID in place, reflectively for an @Id field without a setter.
+     */
+    void setId(T entity, Long id);
+
+    /**
+     * @param columnIndexes result set column index by upper case label
+     * @param aliasPrefix prefix of the labels, i.e. "P_" for P_FIRST_NAME, "" for plain column names
+     * @return result set index of each of columns(), 0 when the query doesn't select it
+     */
+    default int[] columnIndexes(Map<String, Integer> columnIndexes, String aliasPrefix) {
+        String[] columns = columns();
+        int[] indexes = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            indexes[i] = columnIndexes.getOrDefault(aliasPrefix + columns[i], 0);
+        }
+        return indexes;
+    }
+
+    /**
+     * Maps the current row, columns not selected are left null.
+     */
+    T read(ResultSet rs, int[] columnIndexes) throws SQLException;
+
+    /**
+     * Binds all columns but the ID in order, starting at parameterIndex.
+     * @return the parameter index after the last one bound
+     */
+    int bindColumns(T entity, PreparedStatement ps, int parameterIndex) throws SQLException;
+
+    /**
+     * @return "INSERT INTO table (columns but the ID) VALUES(...)", bound by bindColumns
+     */
+    String insertSql();
+
+    /**
+     * @return "UPDATE table SET columns but the ID WHERE ID=?", bound by bindColumns and the ID last
+     */
+    String updateSql();
+}
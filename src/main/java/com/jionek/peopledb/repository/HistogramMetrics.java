@@ -0,0 +1,61 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.CrudOperation;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process RepositoryMetrics: a LatencyHistogram plus row and error counters per CrudOperation.
+ * Recording never locks, so one instance can be shared by repositories used from many threads.
+ */
+public final class HistogramMetrics implements RepositoryMetrics {
+
+    private static final class OperationMetrics {
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+    }
+
+    private final EnumMap<CrudOperation, OperationMetrics> operations = new EnumMap<>(CrudOperation.class);
+    private final long createdNanos = System.nanoTime();
+
+    public HistogramMetrics() {
+        // filled once up front, afterwards the map is only read
+        for (CrudOperation operation : CrudOperation.values()) {
+            operations.put(operation, new OperationMetrics());
+        }
+    }
+
+    @Override
+    public void record(CrudOperation operation, long elapsedNanos, long rows, boolean failed) {
+        OperationMetrics metrics = operations.get(operation);
+        metrics.latencies.record(elapsedNanos);
+        metrics.rows.add(rows);
+        if (failed) metrics.errors.increment();
+    }
+
+    public OperationStats stats(CrudOperation operation) {
+        OperationMetrics metrics = operations.get(operation);
+        LatencyHistogram latencies = metrics.latencies;
+        long count = latencies.count();
+        double seconds = (System.nanoTime() - createdNanos) / 1e9;
+        return new OperationStats(count, metrics.errors.sum(), metrics.rows.sum(), latencies.mean(),
+                latencies.percentile(50), latencies.percentile(90), latencies.percentile(99), latencies.max(),
+                seconds > 0 ? count / seconds : 0.0);
+    }
+
+    /**
+     * @return stats of the operations executed at least once
+     */
+    public Map<CrudOperation, OperationStats> stats() {
+        Map<CrudOperation, OperationStats> stats = new EnumMap<>(CrudOperation.class);
+        for (CrudOperation operation : CrudOperation.values()) {
+            if (operations.get(operation).latencies.count() > 0) {
+                stats.put(operation, stats(operation));
+            }
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,45 @@
+package com.jionek.peopledb.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Fixed sizes for the ":ids" IN list of multi-ID statements. Every chunk of IDs is padded up to the next bucket
+ * by repeating its last ID, so only a handful of distinct SQL texts are ever prepared and their plans get reused.
+ */
+final class IdBuckets {
+    static final int[] SIZES = {1, 16, 128, 1024};
+    static final int MAX_SIZE = SIZES[SIZES.length - 1];
+
+    private IdBuckets() {
+    }
+
+    static int bucketFor(int idCount) {
+        for (int size : SIZES) {
+            if (idCount <= size) return size;
+        }
+        throw new IllegalArgumentException("At most %d IDs fit in one statement, got %d".formatted(MAX_SIZE, idCount));
+    }
+
+    /**
+     * @param sql statement with a ":ids" named parameter, i.e. "DELETE FROM PEOPLE WHERE ID IN(:ids)"
+     */
+    static String expand(String sql, int bucket) {
+        StringJoiner placeholders = new StringJoiner(", ");
+        for (int i = 0; i < bucket; i++) {
+            placeholders.add("?");
+        }
+        return sql.replace(":ids", placeholders.toString());
+    }
+
+    /**
+     * Binds the IDs starting at parameter 1 and pads the rest of the bucket with the last one.
+     */
+    static void bind(PreparedStatement ps, List<Long> ids, int bucket) throws SQLException {
+        for (int i = 0; i < bucket; i++) {
+            ps.setLong(i + 1, ids.get(Math.min(i, ids.size() - 1)));
+        }
+    }
+}
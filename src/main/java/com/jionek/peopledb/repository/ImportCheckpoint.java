@@ -0,0 +1,126 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.exception.DataException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * What part of a CSV file an import has committed, kept in a properties file next to it.
+ * Chunks are committed out of order by parallel writers, so besides the offset below which everything
+ * is committed it keeps the chunks committed past it; a resumed import skips both.
+ * The file is rewritten (write then atomic move) after each commit, outside the lock guarding the state:
+ * writers take a copy of the state numbered in commit order, and a copy older than the one already written is dropped.
+ */
+final class ImportCheckpoint {
+    private final Path file;
+    private final int chunkRows;
+    private long committedOffset;
+    // start offset -> end offset of chunks committed after committedOffset
+    private final TreeMap<Long, Long> committedAhead = new TreeMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    // one writer at a time, so the file only moves forward
+    private final ReentrantLock fileLock = new ReentrantLock();
+    private long version;
+    private long writtenVersion;
+
+    private record State(long version, long committedOffset, String committedAhead) { }
+
+    private ImportCheckpoint(Path file, int chunkRows) {
+        this.file = file;
+        this.chunkRows = chunkRows;
+    }
+
+    /**
+     * @param chunkRows rows per chunk of the import; resuming with a different value would produce other chunks
+     */
+    static ImportCheckpoint load(Path file, int chunkRows) {
+        ImportCheckpoint checkpoint = new ImportCheckpoint(file, chunkRows);
+        if (!Files.exists(file)) return checkpoint;
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            throw new DataException("Unable to read import checkpoint " + file, e);
+        }
+        int savedChunkRows = Integer.parseInt(properties.getProperty("chunkRows"));
+        if (savedChunkRows != chunkRows) {
+            throw new IllegalStateException("Checkpoint %s was written with %d rows per commit, resume with the same value instead of %d"
+                    .formatted(file, savedChunkRows, chunkRows));
+        }
+        checkpoint.committedOffset = Long.parseLong(properties.getProperty("committedOffset"));
+        String ahead = properties.getProperty("committedAhead", "");
+        if (!ahead.isEmpty()) {
+            for (String range : ahead.split(",")) {
+                String[] bounds = range.split("-");
+                checkpoint.committedAhead.put(Long.parseLong(bounds[0]), Long.parseLong(bounds[1]));
+            }
+        }
+        return checkpoint;
+    }
+
+    long committedOffset() {
+        lock.lock();
+        try {
+            return committedOffset;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isCommitted(long start) {
+        lock.lock();
+        try {
+            return start < committedOffset || committedAhead.containsKey(start);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void committed(long start, long end) {
+        State state;
+        lock.lock();
+        try {
+            committedAhead.put(start, end);
+            Long next;
+            while ((next = committedAhead.remove(committedOffset)) != null) {
+                committedOffset = next;
+            }
+            state = new State(++version, committedOffset, committedAhead.entrySet().stream()
+                    .map(range -> range.getKey() + "-" + range.getValue())
+                    .collect(Collectors.joining(",")));
+        } finally {
+            lock.unlock();
+        }
+        save(state);
+    }
+
+    private void save(State state) {
+        fileLock.lock();
+        try {
+            if (state.version() <= writtenVersion) return;
+            Properties properties = new Properties();
+            properties.setProperty("chunkRows", String.valueOf(chunkRows));
+            properties.setProperty("committedOffset", String.valueOf(state.committedOffset()));
+            properties.setProperty("committedAhead", state.committedAhead());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temp)) {
+                properties.store(writer, "PeopleCsvImporter checkpoint");
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writtenVersion = state.version();
+        } catch (IOException e) {
+            throw new DataException("Unable to write import checkpoint " + file, e);
+        } finally {
+            fileLock.unlock();
+        }
+    }
+}
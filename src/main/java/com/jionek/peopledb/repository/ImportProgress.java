@@ -0,0 +1,22 @@
+package com.jionek.peopledb.repository;
+
+import java.time.Duration;
+
+/**
+ * Progress of a PeopleCsvImporter run.
+ * @param rows rows committed by this run, resumed ones not included
+ * @param committedOffset byte offset of the file up to which every row is committed
+ * @param fileSize size of the imported file in bytes
+ * @param elapsed time since this run started
+ */
+public record ImportProgress(long rows, long committedOffset, long fileSize, Duration elapsed) {
+
+    public double rowsPerSecond() {
+        double seconds = elapsed.toNanos() / 1e9;
+        return seconds == 0 ? 0.0 : rows / seconds;
+    }
+
+    public boolean isDone() {
+        return committedOffset == fileSize;
+    }
+}
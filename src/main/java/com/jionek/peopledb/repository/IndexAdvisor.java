@@ -0,0 +1,153 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.exception.DataException;
+import com.jionek.peopledb.model.CrudOperation;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs EXPLAIN on every @SQL query of the repositories known to GeneratedRepositoryMetadata and reports the
+ * full scans: of a joined table, or of a table the query filters. Reading a whole table on purpose,
+ * like STREAM_ALL or COUNT do, is fine. Understands the plans of H2 and MySQL, other databases aren't checked.
+ */
+public class IndexAdvisor {
+    private static final System.Logger LOGGER = System.getLogger(IndexAdvisor.class.getName());
+    // H2 prints the access path of each table as a comment, i.e. /* PUBLIC.PEOPLE.tableScan */
+    private static final Pattern H2_TABLE_SCAN = Pattern.compile("/\\* [\\w\"]+\\.([\\w\"]+)\\.tableScan \\*/");
+
+    /**
+     * A query reading a whole table where it should use an index.
+     * @param plan the database's plan of the query
+     */
+    public record FullScan(Class<?> repositoryClass, CrudOperation operation, String table, String plan) {
+        @Override
+        public String toString() {
+            return repositoryClass.getSimpleName() + " " + operation + " scans " + table + ":\n" + plan;
+        }
+    }
+
+    private final boolean strict;
+
+    public IndexAdvisor() {
+        this(false);
+    }
+
+    /**
+     * @param strict whether check() fails on full scans instead of logging warnings
+     */
+    public IndexAdvisor(boolean strict) {
+        this.strict = strict;
+    }
+
+    /**
+     * @return the full scans of all registered @SQL queries, INSERTs aren't checked
+     * @throws DataException in strict mode, when there are full scans
+     */
+    public List<FullScan> check(Connection connection) {
+        List<FullScan> scans = new ArrayList<>();
+        try {
+            String database = connection.getMetaData().getDatabaseProductName();
+            if (!database.equals("H2") && !database.equals("MySQL")) {
+                LOGGER.log(System.Logger.Level.WARNING, "Query plans of " + database + " aren't checked");
+                return scans;
+            }
+            for (Class<?> repositoryClass : GeneratedRepositoryMetadata.repositoryClasses()) {
+                for (Map.Entry<CrudOperation, String> query : RepositoryMetadata.of(repositoryClass).sqlByOperation().entrySet()) {
+                    String sql = query.getValue().strip();
+                    if (sql.regionMatches(true, 0, "INSERT", 0, 6)) continue;
+                    for (String table : database.equals("H2") ? h2FullScans(explainH2(connection, sql)) : mysqlFullScans(connection, sql)) {
+                        scans.add(new FullScan(repositoryClass, query.getKey(), table, explainText(connection, database, sql)));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new DataException("Unable to explain queries", e);
+        }
+        if (scans.isEmpty()) return scans;
+        if (strict) {
+            throw new DataException("Queries doing full scans, missing indexes?\n" + scans);
+        }
+        for (FullScan scan : scans) {
+            LOGGER.log(System.Logger.Level.WARNING, "Full scan, missing index? " + scan);
+        }
+        return scans;
+    }
+
+    // every parameter is bound to 1, which passes for an ID, a LIMIT and a value to compare with
+    private static PreparedStatement explain(Connection connection, String sql) throws SQLException {
+        String expanded = IdBuckets.expand(sql, 1);
+        PreparedStatement ps = connection.prepareStatement("EXPLAIN " + expanded);
+        int parameters = (int) expanded.chars().filter(c -> c == '?').count();
+        for (int i = 1; i <= parameters; i++) {
+            ps.setLong(i, 1);
+        }
+        return ps;
+    }
+
+    private static String explainH2(Connection connection, String sql) throws SQLException {
+        try (PreparedStatement ps = explain(connection, sql); ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getString(1) : "";
+        }
+    }
+
+    /**
+     * Tables scanned in an H2 plan: joined ones, and the one read first when the statement has a WHERE.
+     */
+    static List<String> h2FullScans(String plan) {
+        List<String> tables = new ArrayList<>();
+        boolean filtered = plan.lines().anyMatch(line -> line.startsWith("WHERE "));
+        boolean joined = false;
+        for (String line : plan.lines().toList()) {
+            if (line.contains(" JOIN ")) joined = true;
+            Matcher scan = H2_TABLE_SCAN.matcher(line);
+            if (scan.find() && (joined || filtered)) {
+                tables.add(scan.group(1).replace("\"", ""));
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Tables MySQL reads whole (type ALL, or index for a full index scan): joined ones, and the first one
+     * when rows of it are filtered.
+     */
+    private static List<String> mysqlFullScans(Connection connection, String sql) throws SQLException {
+        List<String> tables = new ArrayList<>();
+        try (PreparedStatement ps = explain(connection, sql); ResultSet rs = ps.executeQuery()) {
+            boolean first = true;
+            while (rs.next()) {
+                String type = rs.getString("type");
+                String extra = rs.getString("Extra");
+                boolean fullScan = "ALL".equals(type) || "index".equals(type);
+                if (fullScan && (!first || (extra != null && extra.contains("Using where")))) {
+                    tables.add(rs.getString("table").toUpperCase(Locale.ROOT));
+                }
+                first = false;
+            }
+        }
+        return tables;
+    }
+
+    private static String explainText(Connection connection, String database, String sql) throws SQLException {
+        if (database.equals("H2")) return explainH2(connection, sql);
+        StringBuilder plan = new StringBuilder();
+        try (PreparedStatement ps = explain(connection, sql); ResultSet rs = ps.executeQuery()) {
+            int columns = rs.getMetaData().getColumnCount();
+            while (rs.next()) {
+                for (int i = 1; i <= columns; i++) {
+                    plan.append(rs.getMetaData().getColumnLabel(i)).append('=').append(rs.getString(i)).append(i < columns ? ", " : "\n");
+                }
+            }
+        }
+        return plan.toString();
+    }
+}
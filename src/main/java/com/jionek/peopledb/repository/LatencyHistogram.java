@@ -0,0 +1,82 @@
+package com.jionek.peopledb.repository;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of nanosecond latencies in the style of HdrHistogram: every power of two is split
+ * into 32 linear sub-buckets, so any recorded value is known within about 3% over the whole long range.
+ * Recording is lock-free, an atomic increment of one counter; readers see a consistent enough view
+ * without stopping writers.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // values below 2 * SUB_BUCKETS get a bucket each, every further power of two gets SUB_BUCKETS buckets
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucketOf(value));
+        totalCount.increment();
+        totalNanos.add(value);
+        if (value > maxNanos.get()) {
+            maxNanos.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    long count() {
+        return totalCount.sum();
+    }
+
+    long max() {
+        return maxNanos.get();
+    }
+
+    double mean() {
+        long count = totalCount.sum();
+        return count == 0 ? 0.0 : (double) totalNanos.sum() / count;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the highest value equivalent to the one at the percentile, 0 when nothing was recorded
+     */
+    long percentile(double percentile) {
+        if (percentile < 0 || percentile > 100) throw new IllegalArgumentException("Percentile must be within 0-100, got: " + percentile);
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return Math.min(highestEquivalent(i), max());
+        }
+        return max();
+    }
+
+    static int bucketOf(long value) {
+        int magnitude = Long.SIZE - 1 - Long.numberOfLeadingZeros(value | 1);
+        if (magnitude <= SUB_BUCKET_BITS) return (int) value;
+        int shift = magnitude - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long highestEquivalent(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket - (long) shift * SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
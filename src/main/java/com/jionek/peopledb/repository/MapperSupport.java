@@ -0,0 +1,109 @@
+package com.jionek.peopledb.repository;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Locale;
+
+/**
+ * Typed reads and binds called by generated EntityMappers. A column index of 0 means the query
+ * doesn't select the column and reads null. Date-times are stored as UTC local date-times.
+ */
+final class MapperSupport {
+    private static final ZoneId UTC = ZoneId.of("+0");
+
+    private MapperSupport() {
+    }
+
+    static Long readLong(ResultSet rs, int idx) throws SQLException {
+        if (idx == 0) return null;
+        long value = rs.getLong(idx);
+        return rs.wasNull() ? null : value;
+    }
+
+    static long readLongValue(ResultSet rs, int idx) throws SQLException {
+        return idx == 0 ? 0 : rs.getLong(idx);
+    }
+
+    static Integer readInteger(ResultSet rs, int idx) throws SQLException {
+        if (idx == 0) return null;
+        int value = rs.getInt(idx);
+        return rs.wasNull() ? null : value;
+    }
+
+    static int readIntValue(ResultSet rs, int idx) throws SQLException {
+        return idx == 0 ? 0 : rs.getInt(idx);
+    }
+
+    static String readString(ResultSet rs, int idx) throws SQLException {
+        return idx == 0 ? null : rs.getString(idx);
+    }
+
+    static BigDecimal readBigDecimal(ResultSet rs, int idx) throws SQLException {
+        return idx == 0 ? null : rs.getBigDecimal(idx);
+    }
+
+    static ZonedDateTime readZonedDateTime(ResultSet rs, int idx) throws SQLException {
+        Timestamp timestamp = idx == 0 ? null : rs.getTimestamp(idx);
+        return timestamp == null ? null : ZonedDateTime.of(timestamp.toLocalDateTime(), UTC);
+    }
+
+    static LocalDate readLocalDate(ResultSet rs, int idx) throws SQLException {
+        return idx == 0 ? null : rs.getObject(idx, LocalDate.class);
+    }
+
+    static <E extends Enum<E>> E readEnum(ResultSet rs, int idx, Class<E> type) throws SQLException {
+        String name = readString(rs, idx);
+        return name == null ? null : Enum.valueOf(type, name.toUpperCase(Locale.ROOT));
+    }
+
+    static void bindLong(PreparedStatement ps, int idx, Long value) throws SQLException {
+        if (value == null) {
+            ps.setNull(idx, Types.BIGINT);
+        } else {
+            ps.setLong(idx, value);
+        }
+    }
+
+    static void bindLongValue(PreparedStatement ps, int idx, long value) throws SQLException {
+        ps.setLong(idx, value);
+    }
+
+    static void bindInteger(PreparedStatement ps, int idx, Integer value) throws SQLException {
+        if (value == null) {
+            ps.setNull(idx, Types.INTEGER);
+        } else {
+            ps.setInt(idx, value);
+        }
+    }
+
+    static void bindIntValue(PreparedStatement ps, int idx, int value) throws SQLException {
+        ps.setInt(idx, value);
+    }
+
+    static void bindString(PreparedStatement ps, int idx, String value) throws SQLException {
+        ps.setString(idx, value);
+    }
+
+    static void bindBigDecimal(PreparedStatement ps, int idx, BigDecimal value) throws SQLException {
+        ps.setBigDecimal(idx, value);
+    }
+
+    static void bindZonedDateTime(PreparedStatement ps, int idx, ZonedDateTime value) throws SQLException {
+        ps.setTimestamp(idx, value == null ? null : Timestamp.valueOf(value.withZoneSameInstant(UTC).toLocalDateTime()));
+    }
+
+    static void bindLocalDate(PreparedStatement ps, int idx, LocalDate value) throws SQLException {
+        ps.setObject(idx, value, Types.DATE);
+    }
+
+    static void bindEnum(PreparedStatement ps, int idx, Enum<?> value) throws SQLException {
+        ps.setString(idx, value == null ? null : value.name());
+    }
+}
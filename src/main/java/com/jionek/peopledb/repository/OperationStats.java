@@ -0,0 +1,15 @@
+package com.jionek.peopledb.repository;
+
+/**
+ * Snapshot of the HistogramMetrics of one CrudOperation, latencies in nanoseconds.
+ * @param count statements executed, failed ones included
+ * @param rows rows affected or read, summed over all statements
+ * @param throughputPerSecond statements per second since the metrics were created
+ */
+public record OperationStats(long count, long errors, long rows, double meanNanos,
+                             long p50Nanos, long p90Nanos, long p99Nanos, long maxNanos, double throughputPerSecond) {
+
+    public double errorRatio() {
+        return count == 0 ? 0.0 : (double) errors / count;
+    }
+}
@@ -0,0 +1,290 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.exception.DataException;
+import com.jionek.peopledb.model.Person;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Bulk loads a CSV file into PEOPLE through a pipeline: one thread reads the file with NIO and cuts it
+ * into chunks of commitEvery lines, parser threads turn chunks into people, and writer threads save
+ * each chunk with batched inserts in its own transaction. Bounded queues between the stages keep
+ * at most a few chunks in memory whatever the size of the file.
+ * <p>
+ * After each commit the chunk is recorded in a checkpoint file, an import that failed or crashed
+ * is resumed by running it again with the same checkpoint and commitEvery; committed chunks are skipped.
+ * A crash between a commit and its checkpoint write imports that chunk again.
+ */
+public final class PeopleCsvImporter {
+    public static final int DEFAULT_COMMIT_EVERY = 10_000;
+    public static final Duration DEFAULT_PROGRESS_INTERVAL = Duration.ofSeconds(5);
+
+    private static final DateTimeFormatter DATE_OF_BIRTH = DateTimeFormatter.ofPattern("M/d/yyyy");
+    private static final DateTimeFormatter TIME_OF_BIRTH = DateTimeFormatter.ofPattern("hh:mm:ss a", Locale.US);
+    private static final ZoneId UTC = ZoneId.of("+0");
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final long WRITER_POLL_MILLIS = 100;
+
+    /**
+     * Line format of the HR extracts: first name, last name and email in columns 2, 4 and 6,
+     * date and time of birth in 10 and 11, salary in 25.
+     */
+    public static final Function<String, Person> HR_EXTRACT = line -> {
+        String[] arr = line.split(",");
+        LocalDate dob = LocalDate.parse(arr[10], DATE_OF_BIRTH);
+        LocalTime tob = LocalTime.parse(arr[11], TIME_OF_BIRTH);
+        Person person = new Person(arr[2], arr[4], ZonedDateTime.of(LocalDateTime.of(dob, tob), UTC));
+        person.setSalary(new BigDecimal(arr[25]));
+        person.setEmail(arr[6]);
+        return person;
+    };
+
+    private record Chunk(long start, long end, byte[] lines) { }
+
+    private record ParsedChunk(long start, long end, List<Person> people) { }
+
+    private static final Chunk NO_MORE_CHUNKS = new Chunk(-1, -1, new byte[0]);
+    private static final ParsedChunk NO_MORE_PARSED = new ParsedChunk(-1, -1, List.of());
+
+    private final PeopleRepository repository;
+    private final Function<String, Person> lineParser;
+    private final int parserThreads;
+    private final int writerThreads;
+    private final int commitEvery;
+
+    public PeopleCsvImporter(PeopleRepository repository) {
+        this(repository, HR_EXTRACT, Runtime.getRuntime().availableProcessors(), 4, DEFAULT_COMMIT_EVERY);
+    }
+
+    /**
+     * @param repository must be DataSource or ConnectionPool based, writers commit concurrently
+     * @param lineParser maps one line of the file, without its line break, to a person
+     * @param writerThreads connections used at once, should not exceed the pool size
+     * @param commitEvery rows per transaction and per checkpoint step
+     */
+    public PeopleCsvImporter(PeopleRepository repository, Function<String, Person> lineParser,
+                             int parserThreads, int writerThreads, int commitEvery) {
+        if (repository.source instanceof SingleConnectionSource) {
+            throw new IllegalArgumentException("Importing needs a DataSource or ConnectionPool based repository, a single connection can't commit from several writers");
+        }
+        if (parserThreads < 1 || writerThreads < 1) throw new IllegalArgumentException("Thread counts must be positive, got: %d parsers, %d writers".formatted(parserThreads, writerThreads));
+        if (commitEvery < 1) throw new IllegalArgumentException("Rows per commit must be positive, got: " + commitEvery);
+        this.repository = repository;
+        this.lineParser = lineParser;
+        this.parserThreads = parserThreads;
+        this.writerThreads = writerThreads;
+        this.commitEvery = commitEvery;
+    }
+
+    public ImportProgress importFile(Path csv, Path checkpointFile) {
+        return importFile(csv, checkpointFile, progress -> { }, DEFAULT_PROGRESS_INTERVAL);
+    }
+
+    /**
+     * Imports csv, skipping its header line and everything checkpointFile says is already committed.
+     * @param progressListener called every progressInterval from a background thread, and once more at the end
+     * @return final progress
+     * @throws DataException when a stage failed, what was committed until then stays in the checkpoint
+     */
+    public ImportProgress importFile(Path csv, Path checkpointFile, Consumer<ImportProgress> progressListener, Duration progressInterval) {
+        ImportCheckpoint checkpoint = ImportCheckpoint.load(checkpointFile, commitEvery);
+        BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(2 * parserThreads);
+        BlockingQueue<ParsedChunk> parsed = new ArrayBlockingQueue<>(2 * writerThreads);
+        AtomicInteger runningParsers = new AtomicInteger(parserThreads);
+        LongAdder rows = new LongAdder();
+        long start = System.nanoTime();
+
+        try (FileChannel channel = FileChannel.open(csv, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            Runnable report = () -> progressListener.accept(new ImportProgress(rows.sum(), checkpoint.committedOffset(),
+                    fileSize, Duration.ofNanos(System.nanoTime() - start)));
+            // readers and parsers are interrupted on failure, writers are only told to stop
+            // so that no commit is left without its checkpoint
+            ExecutorService pipeline = Executors.newFixedThreadPool(1 + parserThreads);
+            ExecutorService writers = Executors.newFixedThreadPool(writerThreads);
+            ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+            AtomicBoolean aborted = new AtomicBoolean();
+            try {
+                reporter.scheduleAtFixedRate(report, progressInterval.toNanos(), progressInterval.toNanos(), TimeUnit.NANOSECONDS);
+                BlockingQueue<Future<Void>> finished = new LinkedBlockingQueue<>();
+                CompletionService<Void> pipelineStages = new ExecutorCompletionService<>(pipeline, finished);
+                CompletionService<Void> writerStages = new ExecutorCompletionService<>(writers, finished);
+                pipelineStages.submit(() -> read(channel, checkpoint, chunks), null);
+                for (int i = 0; i < parserThreads; i++) {
+                    pipelineStages.submit(() -> parse(chunks, parsed, runningParsers), null);
+                }
+                for (int i = 0; i < writerThreads; i++) {
+                    writerStages.submit(() -> write(parsed, checkpoint, rows, aborted), null);
+                }
+                for (int i = 0; i < 1 + parserThreads + writerThreads; i++) {
+                    finished.take().get();
+                }
+            } catch (ExecutionException e) {
+                abort(aborted, pipeline, writers);
+                throw new DataException("Import of %s failed, run it again to resume after row %d of this run"
+                        .formatted(csv, rows.sum()), e.getCause());
+            } catch (InterruptedException e) {
+                abort(aborted, pipeline, writers);
+                Thread.currentThread().interrupt();
+                throw new DataException("Import of " + csv + " interrupted", e);
+            } finally {
+                pipeline.shutdownNow();
+                writers.shutdown();
+                reporter.shutdownNow();
+            }
+            ImportProgress done = new ImportProgress(rows.sum(), checkpoint.committedOffset(), fileSize, Duration.ofNanos(System.nanoTime() - start));
+            progressListener.accept(done);
+            return done;
+        } catch (IOException e) {
+            throw new DataException("Unable to read " + csv, e);
+        }
+    }
+
+    private static void abort(AtomicBoolean aborted, ExecutorService pipeline, ExecutorService writers) {
+        aborted.set(true);
+        pipeline.shutdownNow();
+        writers.shutdown();
+        try {
+            writers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Cuts the file into chunks of commitEvery whole lines, chunks are cut at the same offsets on every run.
+     */
+    private void read(FileChannel channel, ImportCheckpoint checkpoint, BlockingQueue<Chunk> chunks) {
+        try {
+            long position = checkpoint.committedOffset();
+            boolean inHeader = position == 0;
+            channel.position(position);
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            byte[] pending = new byte[READ_BUFFER_SIZE];
+            int pendingLength = 0;
+            long chunkStart = position;
+            int lines = 0;
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                byte[] bytes = buffer.array();
+                int from = 0;
+                for (int i = 0; i < buffer.limit(); i++) {
+                    if (bytes[i] != '\n') continue;
+                    if (inHeader) {
+                        inHeader = false;
+                        chunkStart = position + i + 1;
+                        from = i + 1;
+                        checkpoint.committed(0, chunkStart);
+                    } else if (++lines == commitEvery) {
+                        pending = append(pending, pendingLength, bytes, from, i + 1 - from);
+                        pendingLength += i + 1 - from;
+                        offer(chunks, checkpoint, new Chunk(chunkStart, position + i + 1, Arrays.copyOf(pending, pendingLength)));
+                        chunkStart = position + i + 1;
+                        pendingLength = 0;
+                        lines = 0;
+                        from = i + 1;
+                    }
+                }
+                if (!inHeader) {
+                    pending = append(pending, pendingLength, bytes, from, buffer.limit() - from);
+                    pendingLength += buffer.limit() - from;
+                }
+                position += buffer.limit();
+                buffer.clear();
+            }
+            if (pendingLength > 0) {
+                offer(chunks, checkpoint, new Chunk(chunkStart, position, Arrays.copyOf(pending, pendingLength)));
+            }
+            for (int i = 0; i < parserThreads; i++) {
+                chunks.put(NO_MORE_CHUNKS);
+            }
+        } catch (IOException e) {
+            throw new DataException("Unable to read import file", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void offer(BlockingQueue<Chunk> chunks, ImportCheckpoint checkpoint, Chunk chunk) throws InterruptedException {
+        if (!checkpoint.isCommitted(chunk.start())) {
+            chunks.put(chunk);
+        }
+    }
+
+    private static byte[] append(byte[] target, int length, byte[] source, int from, int count) {
+        if (length + count > target.length) {
+            target = Arrays.copyOf(target, Math.max(2 * target.length, length + count));
+        }
+        System.arraycopy(source, from, target, length, count);
+        return target;
+    }
+
+    private void parse(BlockingQueue<Chunk> chunks, BlockingQueue<ParsedChunk> parsed, AtomicInteger runningParsers) {
+        try {
+            Chunk chunk;
+            while ((chunk = chunks.take()) != NO_MORE_CHUNKS) {
+                List<Person> people = new ArrayList<>(commitEvery);
+                for (String line : new String(chunk.lines(), StandardCharsets.UTF_8).split("\r?\n")) {
+                    if (!line.isBlank()) people.add(lineParser.apply(line));
+                }
+                parsed.put(new ParsedChunk(chunk.start(), chunk.end(), people));
+            }
+            if (runningParsers.decrementAndGet() == 0) {
+                for (int i = 0; i < writerThreads; i++) {
+                    parsed.put(NO_MORE_PARSED);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(BlockingQueue<ParsedChunk> parsed, ImportCheckpoint checkpoint, LongAdder rows, AtomicBoolean aborted) {
+        try {
+            while (!aborted.get()) {
+                ParsedChunk chunk = parsed.poll(WRITER_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (chunk == null) continue;
+                if (chunk == NO_MORE_PARSED) return;
+                List<Person> people = chunk.people();
+                repository.inTransaction(() -> repository.saveAll(people));
+                checkpoint.committed(chunk.start(), chunk.end());
+                rows.add(people.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
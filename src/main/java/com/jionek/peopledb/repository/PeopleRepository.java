@@ -1,29 +1,37 @@
 package com.jionek.peopledb.repository;
 
 import com.jionek.peopledb.annotation.SQL;
+import com.jionek.peopledb.exception.UnableToSaveException;
 import com.jionek.peopledb.model.Address;
 import com.jionek.peopledb.model.CrudOperation;
+import com.jionek.peopledb.model.Fetch;
 import com.jionek.peopledb.model.Person;
-import com.jionek.peopledb.model.Region;
 
-import java.math.BigDecimal;
+import javax.sql.DataSource;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
 import java.sql.*;
-import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 
 public class PeopleRepository extends CrudRepository<Person> {
 
-    private AddressRepository addressRepository;
+    private final AddressRepository addressRepository;
+    private final PersonGraphWriter graphWriter;
+    private final DirtyTracker<Person> dirtyTracker = new DirtyTracker<>("PEOPLE", "ID", List.of(
+            new DirtyTracker.Column<>("FIRST_NAME", Person::getFirstName, Types.VARCHAR),
+            new DirtyTracker.Column<>("LAST_NAME", Person::getLastName, Types.VARCHAR),
+            new DirtyTracker.Column<>("DOB", person -> person.getDob() == null ? null : convertDobToTimestamp(person.getDob()), Types.TIMESTAMP),
+            new DirtyTracker.Column<>("SALARY", Person::getSalary, Types.DECIMAL)));
     public static final String SAVE_PERSON_SQL = """
             INSERT INTO PEOPLE
             (FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL, HOME_ADDRESS, BUSINESS_ADDRESS, SPOUSE_ID, PARENT_ID)
             VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?)""";
-    public static final String FIND_BY_ID_SQL = """
+    private static final String SELECT_PERSON_GRAPH_SQL = """
             SELECT
             P.ID AS P_ID, P.FIRST_NAME AS P_FIRST_NAME, P.LAST_NAME AS P_LAST_NAME, P.DOB AS P_DOB, P.SALARY AS P_SALARY,
             P.HOME_ADDRESS AS P_HOME_ADDRESS, P.BUSINESS_ADDRESS AS P_BUSINESS_ADDRESS, P.SPOUSE_ID AS P_SPOUSE_ID, P.PARENT_ID AS P_PARENT_ID,
@@ -48,35 +56,284 @@ public class PeopleRepository extends CrudRepository<Person> {
             LEFT JOIN ADDRESSES AS HOME ON P.HOME_ADDRESS = HOME.ID
             LEFT JOIN ADDRESSES AS BUSINESS ON P.BUSINESS_ADDRESS = BUSINESS.ID
             
+            """;
+    public static final String FIND_BY_ID_SQL = SELECT_PERSON_GRAPH_SQL + """
+            WHERE P.ID=?
+            """;
+    public static final String FIND_ALL_BY_ID_SQL = SELECT_PERSON_GRAPH_SQL + """
+            WHERE P.ID IN(:ids)
+            ORDER BY P.ID
+            """;
+    private static final String SELECT_PERSON_SQL = """
+            SELECT
+            P.ID AS P_ID, P.FIRST_NAME AS P_FIRST_NAME, P.LAST_NAME AS P_LAST_NAME, P.DOB AS P_DOB, P.SALARY AS P_SALARY,
+            P.HOME_ADDRESS AS P_HOME_ADDRESS, P.BUSINESS_ADDRESS AS P_BUSINESS_ADDRESS, P.SPOUSE_ID AS P_SPOUSE_ID, P.PARENT_ID AS P_PARENT_ID
+            FROM PEOPLE AS P
+            """;
+    /**
+     * findById and findAllById with lazy loading on, the associations are read on access.
+     */
+    public static final String FIND_BY_ID_LAZY_SQL = SELECT_PERSON_SQL + """
             WHERE P.ID=?
             """;
+    public static final String FIND_ALL_BY_ID_LAZY_SQL = SELECT_PERSON_SQL + """
+            WHERE P.ID IN(:ids)
+            ORDER BY P.ID
+            """;
+    public static final String FIND_CHILDREN_SQL = SELECT_PERSON_SQL + """
+            WHERE P.PARENT_ID IN(:ids)
+            ORDER BY P.ID
+            """;
     public static final String FIND_ALL_SQL = """
     SELECT
-    P.ID AS P_ID, P.FIRST_NAME AS P_FIRST_NAME, P.LAST_NAME AS P_LAST_NAME, P.DOB AS P_DOB, P.SALARY AS P_SALARY
+    P.ID AS P_ID, P.FIRST_NAME AS P_FIRST_NAME, P.LAST_NAME AS P_LAST_NAME, P.DOB AS P_DOB, P.SALARY AS P_SALARY,
+    P.HOME_ADDRESS AS P_HOME_ADDRESS, P.BUSINESS_ADDRESS AS P_BUSINESS_ADDRESS, P.SPOUSE_ID AS P_SPOUSE_ID, P.PARENT_ID AS P_PARENT_ID
     FROM PEOPLE AS P
     LIMIT 100
     """;
+    public static final String STREAM_ALL_SQL = """
+    SELECT
+    P.ID AS P_ID, P.FIRST_NAME AS P_FIRST_NAME, P.LAST_NAME AS P_LAST_NAME, P.DOB AS P_DOB, P.SALARY AS P_SALARY,
+    P.HOME_ADDRESS AS P_HOME_ADDRESS, P.BUSINESS_ADDRESS AS P_BUSINESS_ADDRESS, P.SPOUSE_ID AS P_SPOUSE_ID, P.PARENT_ID AS P_PARENT_ID
+    FROM PEOPLE AS P
+    """;
+    public static final String SNAPSHOT_SQL = """
+    SELECT P.ID, P.FIRST_NAME, P.LAST_NAME, P.DOB, P.SALARY, HOME.REGION, BUSINESS.REGION
+    FROM PEOPLE AS P
+    LEFT JOIN ADDRESSES AS HOME ON P.HOME_ADDRESS = HOME.ID
+    LEFT JOIN ADDRESSES AS BUSINESS ON P.BUSINESS_ADDRESS = BUSINESS.ID
+    ORDER BY P.ID
+    """;
+    public static final String FIND_PAGE_SQL = """
+    SELECT
+    P.ID AS P_ID, P.FIRST_NAME AS P_FIRST_NAME, P.LAST_NAME AS P_LAST_NAME, P.DOB AS P_DOB, P.SALARY AS P_SALARY,
+    P.HOME_ADDRESS AS P_HOME_ADDRESS, P.BUSINESS_ADDRESS AS P_BUSINESS_ADDRESS, P.SPOUSE_ID AS P_SPOUSE_ID, P.PARENT_ID AS P_PARENT_ID
+    FROM PEOPLE AS P
+    WHERE P.ID > ?
+    ORDER BY P.ID
+    LIMIT ?
+    """;
     public static final String SELECT_COUNT_SQL = "SELECT COUNT(*) FROM PEOPLE";
     public static final String DELETE_SQL = "DELETE FROM PEOPLE WHERE ID=?";
     public static final String DELETE_IN_SQL = "DELETE FROM PEOPLE WHERE ID IN(:ids)";
     public static final String UPDATE_SQL = "UPDATE PEOPLE SET FIRST_NAME=?, LAST_NAME=?, DOB=?, SALARY=? WHERE ID=?";
 
-    private Map<String, Integer> aliasColIdxMap = new HashMap<>();
+    private static final ZoneId UTC = ZoneId.of("+0");
+    private static final RowMapperCache<PersonRowMapper> ROW_MAPPERS = new RowMapperCache<>(PersonRowMapper::new);
+
+    private record OpenBatch(WeakReference<ResultSet> resultSet, WeakReference<PersonAssociationBatch> batch) { }
+
+    private volatile boolean lazyLoading;
+    // the lazy batch of the result set this thread reads, people of the same query join it
+    private final ThreadLocal<OpenBatch> openBatch = new ThreadLocal<>();
 
     public PeopleRepository(Connection connection) {
         super(connection);
-        addressRepository = new AddressRepository(connection);
+        addressRepository = new AddressRepository(source);
+        graphWriter = new PersonGraphWriter(this, addressRepository);
+    }
+
+    public PeopleRepository(DataSource dataSource) {
+        super(dataSource);
+        addressRepository = new AddressRepository(source);
+        graphWriter = new PersonGraphWriter(this, addressRepository);
+    }
+
+    public PeopleRepository(ConnectionPool pool) {
+        super(pool);
+        addressRepository = new AddressRepository(source);
+        graphWriter = new PersonGraphWriter(this, addressRepository);
+    }
+
+    /**
+     * Saves the person with its new addresses, spouse and children in one transaction, see PersonGraphWriter.
+     */
+    @Override
+    public Person save(Person entity) throws UnableToSaveException {
+        saveAll(List.of(entity), DEFAULT_BATCH_SIZE);
+        return entity;
+    }
+
+    @Override
+    public List<Person> saveAll(Collection<Person> entities, int batchSize) throws UnableToSaveException {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be positive, got: " + batchSize);
+        inTransaction(() -> graphWriter.write(entities, batchSize));
+        return new ArrayList<>(entities);
+    }
+
+    /**
+     * Saves addresses of people deduplicated by content, see AddressRepository.enableDeduplication(int).
+     */
+    public void enableAddressDeduplication(int maxIndexSize) {
+        addressRepository.enableDeduplication(maxIndexSize);
+    }
+
+    public void disableAddressDeduplication() {
+        addressRepository.disableDeduplication();
+    }
+
+    /**
+     * Also reports the statements of the nested AddressRepository to metrics.
+     */
+    @Override
+    public void setMetrics(RepositoryMetrics metrics) {
+        super.setMetrics(metrics);
+        addressRepository.setMetrics(metrics);
+    }
+
+    /**
+     * Reads people without their associations from now on: findById and findAllById select only PEOPLE rows,
+     * and the spouse, children and addresses of people read by any query are fetched on first access,
+     * for all the people of that query at once, see PersonAssociationBatch.
+     * Access must happen while the repository is open.
+     */
+    public void enableLazyLoading() {
+        lazyLoading = true;
+    }
+
+    /**
+     * Back to joined reads. People already read lazily keep loading on access.
+     */
+    public void disableLazyLoading() {
+        lazyLoading = false;
+    }
+
+    /**
+     * findById joining only the given associations, i.e. findById(id, Fetch.ADDRESSES, Fetch.CHILDREN).
+     * Associations not fetched are loaded on access with lazy loading on, otherwise they stay empty.
+     * The SQL of each combination is generated once, see PersonFetchSql. Reads go to the database,
+     * past the identity map and entity cache.
+     */
+    public Optional<Person> findById(Long id, Fetch... fetch) {
+        return findByIdUsing(id, PersonFetchSql.findById(fetch));
+    }
+
+    /**
+     * findAll joining the given associations, like findById(Long, Fetch...).
+     */
+    public List<Person> findAll(Fetch... fetch) {
+        return findAllUsing(PersonFetchSql.findAll(fetch));
+    }
+
+    /**
+     * People matching all conditions of criteria, ordered by ID. Same shaped criteria share one cached statement.
+     */
+    public List<Person> findAll(PersonCriteria criteria) {
+        return findAllUsing(CrudOperation.FIND_BY_CRITERIA, criteria.sql(), criteria::bind);
+    }
+
+    /**
+     * findAll(PersonCriteria) read row by row like streamAll(), the stream must be closed.
+     */
+    public Stream<Person> streamAll(PersonCriteria criteria) {
+        return streamAll(criteria, STREAMING_FETCH_SIZE);
+    }
+
+    public Stream<Person> streamAll(PersonCriteria criteria, int fetchSize) {
+        return streamUsing(CrudOperation.FIND_BY_CRITERIA, criteria.sql(), criteria::bind, fetchSize);
+    }
+
+    /**
+     * Headcount and salary statistics computed by the database, one PersonStats per group.
+     * Same shaped aggregations share one cached statement.
+     */
+    public List<PersonStats> aggregate(PersonAggregation aggregation) {
+        return queryUsing(CrudOperation.AGGREGATE, aggregation.sql(), aggregation::bind, aggregation::read);
+    }
+
+    /**
+     * aggregate(PersonAggregation) read group by group like streamAll(), for groupings with many groups.
+     * The stream must be closed.
+     */
+    public Stream<PersonStats> streamAggregate(PersonAggregation aggregation) {
+        return streamAggregate(aggregation, STREAMING_FETCH_SIZE);
+    }
+
+    public Stream<PersonStats> streamAggregate(PersonAggregation aggregation, int fetchSize) {
+        return streamUsing(CrudOperation.AGGREGATE, aggregation.sql(), aggregation::bind, fetchSize, aggregation::read);
+    }
+
+    /**
+     * Streams all of PEOPLE into a columnar PeopleSnapshot, without creating a Person per row.
+     */
+    public PeopleSnapshot snapshot() {
+        return snapshot(STREAMING_FETCH_SIZE);
+    }
+
+    public PeopleSnapshot snapshot(int fetchSize) {
+        PeopleSnapshot.Builder builder = new PeopleSnapshot.Builder();
+        try (Stream<Boolean> rows = streamUsing(CrudOperation.STREAM_ALL, SNAPSHOT_SQL, ps -> { }, fetchSize, rs -> {
+            builder.add(rs);
+            return Boolean.TRUE;
+        })) {
+            rows.forEach(row -> { });
+        }
+        return builder.build();
+    }
+
+    /**
+     * Writes every person with their addresses to file, to be mapped by PeopleSnapshotFile.map(Path) on a later start.
+     * @return the high-water mark of the snapshot, the greatest ID written
+     */
+    public long writeSnapshotFile(Path file) {
+        try (Stream<Person> people = streamWithAddressesAfter(Long.MIN_VALUE)) {
+            return PeopleSnapshotFile.write(file, people.iterator());
+        }
+    }
+
+    /**
+     * People saved after snapshot was written, the ones with an ID above its high-water mark, with their addresses.
+     * Changes to the people in the snapshot are not seen, write a new one to pick them up. The stream must be closed.
+     */
+    public Stream<Person> streamSavedAfter(PeopleSnapshotFile snapshot) {
+        return streamWithAddressesAfter(snapshot.highWaterMark()).map(this::tracked);
+    }
+
+    private Stream<Person> streamWithAddressesAfter(long id) {
+        return streamUsing(CrudOperation.STREAM_ALL, PersonFetchSql.STREAM_AFTER_ID_WITH_ADDRESSES, ps -> ps.setLong(1, id),
+                STREAMING_FETCH_SIZE, PeopleRepository::extractPersonWithAddresses);
+    }
+
+    @Override
+    String sqlFor(CrudOperation operationType, Supplier<String> sqlGetter) {
+        if (lazyLoading && operationType == CrudOperation.FIND_BY_ID) return FIND_BY_ID_LAZY_SQL;
+        if (lazyLoading && operationType == CrudOperation.FIND_ALL_BY_ID) return FIND_ALL_BY_ID_LAZY_SQL;
+        return super.sqlFor(operationType, sqlGetter);
+    }
+
+    /**
+     * Children of all the parents, by parent ID, one FIND_CHILDREN_SQL per IdBuckets.MAX_SIZE parents.
+     */
+    Map<Long, List<Person>> findChildren(List<Long> parentIds) {
+        Map<Long, List<Person>> childrenByParentId = new HashMap<>();
+        try (Session session = source.open()) {
+            for (int from = 0; from < parentIds.size(); from += IdBuckets.MAX_SIZE) {
+                List<Long> chunk = parentIds.subList(from, Math.min(from + IdBuckets.MAX_SIZE, parentIds.size()));
+                int bucket = IdBuckets.bucketFor(chunk.size());
+                try (StatementProbe probe = probe(CrudOperation.FIND_ALL_BY_ID)) {
+                    PreparedStatement ps = session.prepare(CrudOperation.FIND_ALL_BY_ID, IdBuckets.expand(FIND_CHILDREN_SQL, bucket));
+                    IdBuckets.bind(ps, chunk, bucket);
+                    int rows = 0;
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            Long parentId = MapperSupport.readLong(rs, ROW_MAPPERS.mapperFor(rs).person().parentId());
+                            childrenByParentId.computeIfAbsent(parentId, id -> new ArrayList<>()).add(tracked(extractEntityFromRow(rs)));
+                            rows++;
+                        }
+                    }
+                    probe.completed(rows);
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return childrenByParentId;
     }
 
     @Override
     @SQL(value = SAVE_PERSON_SQL, operationType = CrudOperation.SAVE)
     void mapForSave(Person entity, PreparedStatement ps) throws SQLException {
-        Address savedAddress;
-        ps.setString(1, entity.getFirstName());
-        ps.setString(2, entity.getLastName());
-        ps.setTimestamp(3, convertDobToTimestamp(entity.getDob()));
-        ps.setBigDecimal(4, entity.getSalary());
-        ps.setString(5, entity.getEmail());
+        PersonEntityMapper.INSTANCE.bindColumns(entity, ps, 1);
         associateAddressWithEntity(6, ps, entity.getHomeAddress());
         associateAddressWithEntity(7, ps, entity.getBusinessAddress());
         associateSpouseWithEntity(8, ps, entity.getSpouse());
@@ -84,12 +341,8 @@ public class PeopleRepository extends CrudRepository<Person> {
         associateChildWithEntity(entity, ps);
     }
 
-    @Override
-    protected void postSave(Person entity, long id) {
-        entity.getChildren().stream()
-                .forEach(this::save);
-    }
-
+    // PersonGraphWriter saves what a person references first, only a spouse linked back to this person
+    // may still have no ID here and gets its SPOUSE_ID set afterwards
     private static void associateChildWithEntity(Person entity, PreparedStatement ps) throws SQLException {
         Optional<Person> parent = entity.getParent();
         if (parent.isPresent()){
@@ -98,25 +351,29 @@ public class PeopleRepository extends CrudRepository<Person> {
             ps.setObject(9, null);
         }
     }
-    private void associateAddressWithEntity(int parameterIndex, PreparedStatement ps, Optional<Address> address) throws SQLException {
-        Address savedAddress;
+    private static void associateAddressWithEntity(int parameterIndex, PreparedStatement ps, Optional<Address> address) throws SQLException {
         if (address.isPresent()) {
-            savedAddress = addressRepository.save(address.get());
-            ps.setLong(parameterIndex, savedAddress.id());
+            ps.setLong(parameterIndex, address.get().id());
         } else {
             ps.setObject(parameterIndex, null);
         }
     }
-    private void associateSpouseWithEntity(int parameterIndex, PreparedStatement ps, Optional<Person> spouse) throws SQLException {
-        Person savedPerson;
-        if (spouse.isPresent()) {
-            savedPerson = new PeopleRepository(super.connection).save(spouse.get());
-            ps.setLong(parameterIndex, savedPerson.getId());
+    private static void associateSpouseWithEntity(int parameterIndex, PreparedStatement ps, Optional<Person> spouse) throws SQLException {
+        if (spouse.isPresent() && spouse.get().getId() != null) {
+            ps.setLong(parameterIndex, spouse.get().getId());
         } else {
             ps.setObject(parameterIndex, null);
         }
     }
 
+    /**
+     * Tracks the columns of UPDATE_SQL, update and updateAll set only the changed ones.
+     */
+    @Override
+    DirtyTracker<Person> dirtyTracker() {
+        return dirtyTracker;
+    }
+
     @Override
     @SQL(value = UPDATE_SQL, operationType = CrudOperation.UPDATE)
     void mapForUpdate(Person entity, PreparedStatement ps) throws SQLException {
@@ -128,114 +385,137 @@ public class PeopleRepository extends CrudRepository<Person> {
 
     @Override
     @SQL(value = FIND_BY_ID_SQL, operationType = CrudOperation.FIND_BY_ID)
+    @SQL(value = FIND_ALL_BY_ID_SQL, operationType = CrudOperation.FIND_ALL_BY_ID)
     @SQL(value = FIND_ALL_SQL, operationType = CrudOperation.FIND_ALL)
+    @SQL(value = STREAM_ALL_SQL, operationType = CrudOperation.STREAM_ALL)
+    @SQL(value = FIND_PAGE_SQL, operationType = CrudOperation.FIND_PAGE)
     @SQL(value = SELECT_COUNT_SQL, operationType = CrudOperation.COUNT)
     @SQL(value = DELETE_SQL, operationType = CrudOperation.DELETE_ONE)
     @SQL(value = DELETE_IN_SQL, operationType = CrudOperation.DELETE_MANY)
     Person extractEntityFromResultSet(ResultSet rs) throws SQLException {
+        PersonRowMapper mapper = ROW_MAPPERS.mapperFor(rs);
+        if (!mapper.joinsAssociations()) return extractEntityFromRow(rs);
         Person finalPerson = null;
+        Set<Person> children = new LinkedHashSet<>();
         do {
-            Person currentPerson = extractPerson(rs, "P_").get();
+            Person currentPerson = extractPerson(rs, mapper.person()).get();
             if (finalPerson == null){
-                finalPerson = currentPerson;
+                finalPerson = lazy(rs, mapper.person(), currentPerson);
             } if (!finalPerson.equals(currentPerson)) {         //  not really sure when they're not equal
                 rs.previous();
                 break;
             }
-            Optional<Person> child = extractPerson(rs, "CHILD_");
-
-            Address homeAddress = extractAddress(rs, "HOME_");
-            Address businessAddress = extractAddress(rs, "BUSINESS_");
+            extractPerson(rs, mapper.child()).ifPresent(children::add);
 
-            Person spouse = extractSpouse(rs, "S_");
-
-            finalPerson.setHomeAddress(homeAddress);
-            finalPerson.setBusinessAddress(businessAddress);
-            finalPerson.setSpouse(spouse);
-            child.ifPresent(finalPerson::addChild);
+            // only the associations the query joins are set, the others stay lazy or empty
+            if (mapper.home()[0] != 0) {
+                finalPerson.setHomeAddress(extractAddress(rs, mapper.home()));
+                finalPerson.setBusinessAddress(extractAddress(rs, mapper.business()));
+            }
+            if (mapper.spouse().id() != 0) {
+                finalPerson.setSpouse(extractSpouse(rs, mapper));
+            }
         } while (rs.next());
+        if (mapper.child().id() != 0) {
+            finalPerson.setChildren(children);
+        }
         return finalPerson;
     }
 
-    private Optional<Person> extractPerson(ResultSet rs, String aliasPrefix) throws SQLException {
-        Long personId = getValueByAlias(aliasPrefix + "ID", rs, Long.class);
-        if (personId == null) return Optional.empty();
-        String firstName = getValueByAlias(aliasPrefix + "FIRST_NAME", rs, String.class);
-        String lastName = getValueByAlias(aliasPrefix + "LAST_NAME", rs, String.class);
-        ZonedDateTime dob = ZonedDateTime.of(getValueByAlias(aliasPrefix + "DOB", rs, LocalDateTime.class), ZoneId.of("+0"));
-        BigDecimal salary = getValueByAlias(aliasPrefix + "SALARY", rs, BigDecimal.class);
-        Person person = new Person(personId, firstName, lastName, dob, salary);
-        return Optional.of(person);
+    @Override
+    Person extractEntityFromRow(ResultSet rs) throws SQLException {
+        PersonColumns columns = ROW_MAPPERS.mapperFor(rs).person();
+        return lazy(rs, columns, extractPerson(rs, columns).orElseThrow());
     }
 
-    private Person extractSpouse(ResultSet rs, String aliasPrefix) throws SQLException{
-        Long spouseId = getValueByAlias(aliasPrefix + "ID", rs, Long.class);
-        if (spouseId == null) return null;
-        String firstName = getValueByAlias(aliasPrefix + "FIRST_NAME", rs, String.class);
-        String lastName = getValueByAlias(aliasPrefix + "LAST_NAME", rs, String.class);
-        ZonedDateTime dob = ZonedDateTime.of(getValueByAlias(aliasPrefix + "DOB", rs, LocalDateTime.class), ZoneId.of("+0"));
-        BigDecimal salary = getValueByAlias(aliasPrefix + "SALARY", rs, BigDecimal.class);
-
-        // For now addresses are unavailable hehe
-//        long homeAddressId = getValueByAlias(aliasPrefix + "HOME_ADDRESS", rs, Long.class);
-//        long businessAddressId = getValueByAlias(aliasPrefix + "BUSINESS_ADDRESS", rs, Long.class);
+    /**
+     * With lazy loading on, puts the person in the batch of its query, so associations it's read without load on access.
+     */
+    private Person lazy(ResultSet rs, PersonColumns columns, Person person) throws SQLException {
+        if (lazyLoading && columns.spouseId() != 0) {
+            batchFor(rs).add(person, new PersonAssociationBatch.Keys(MapperSupport.readLong(rs, columns.spouseId()),
+                    MapperSupport.readLong(rs, columns.homeAddress()), MapperSupport.readLong(rs, columns.businessAddress())));
+        }
+        return person;
+    }
 
-        Address homeAddress = extractAddress(rs, "HOME_");
-        Address businessAddress = extractAddress(rs, "BUSINESS_");
+    private PersonAssociationBatch batchFor(ResultSet rs) {
+        OpenBatch open = openBatch.get();
+        PersonAssociationBatch batch = open == null || open.resultSet().get() != rs ? null : open.batch().get();
+        // capped, so one batch never needs more than one IN list per association
+        if (batch == null || batch.size() >= IdBuckets.MAX_SIZE) {
+            batch = new PersonAssociationBatch(this, addressRepository);
+            openBatch.set(new OpenBatch(new WeakReference<>(rs), new WeakReference<>(batch)));
+        }
+        return batch;
+    }
 
-        Person spouse = new Person(spouseId, firstName, lastName, dob, salary);
-        spouse.setHomeAddress(homeAddress);
-        spouse.setBusinessAddress(businessAddress);
+    private static Optional<Person> extractPerson(ResultSet rs, PersonColumns columns) throws SQLException {
+        if (MapperSupport.readLong(rs, columns.id()) == null) return Optional.empty();
+        return Optional.of(PersonEntityMapper.INSTANCE.read(rs, columns.fields()));
+    }
 
-        return spouse;
+    private static Person extractPersonWithAddresses(ResultSet rs) throws SQLException {
+        PersonRowMapper mapper = ROW_MAPPERS.mapperFor(rs);
+        Person person = extractPerson(rs, mapper.person()).orElseThrow();
+        person.setHomeAddress(extractAddress(rs, mapper.home()));
+        person.setBusinessAddress(extractAddress(rs, mapper.business()));
+        return person;
     }
 
-    private Address extractAddress(ResultSet rs, String aliasPrefix) throws SQLException {
+    private static Person extractSpouse(ResultSet rs, PersonRowMapper mapper) throws SQLException{
+        Optional<Person> spouse = extractPerson(rs, mapper.spouse());
+        if (spouse.isEmpty()) return null;
 
-        // Mysql works on aliases too
-//        if (rs.getObject("HOME_ID") == null) return null;
-//        long addressId = rs.getLong("HOME_ID");
+        // For now the spouse gets the addresses of the joined person
+        if (mapper.home()[0] != 0) {
+            spouse.get().setHomeAddress(extractAddress(rs, mapper.home()));
+            spouse.get().setBusinessAddress(extractAddress(rs, mapper.business()));
+        }
+        return spouse.get();
+    }
 
-        Long adrId = getValueByAlias(aliasPrefix + "ID", rs, Long.class);
-        if (adrId == null) return null;
-        String streetAddress = getValueByAlias(aliasPrefix + "STREET_ADDRESS", rs, String.class);
-        String address2 = getValueByAlias(aliasPrefix + "ADDRESS2", rs, String.class);
-        String city = getValueByAlias(aliasPrefix + "CITY", rs, String.class);
-        String state = getValueByAlias(aliasPrefix + "STATE", rs, String.class);
-        String postcode = getValueByAlias(aliasPrefix + "POSTCODE", rs, String.class);
-        String county = getValueByAlias(aliasPrefix + "COUNTY", rs, java.lang.String.class);
-        Region region = Region.valueOf(getValueByAlias(aliasPrefix + "REGION", rs, String.class).toUpperCase());
-        String country = getValueByAlias(aliasPrefix + "COUNTRY", rs, String.class);
-        Address address = new Address(adrId, streetAddress, address2, city, state, postcode, county, region, country);
+    private static Address extractAddress(ResultSet rs, int[] columns) throws SQLException {
+        if (MapperSupport.readLong(rs, columns[0]) == null) return null;
+        return AddressEntityMapper.INSTANCE.read(rs, columns);
+    }
 
-//        Address address = new Address(addressId, streetAddress, address2, city, state, postcode, county, region, country);
+    /**
+     * Column indexes of one result set shape, compiled once by ROW_MAPPERS from the aliases
+     * of the person graph query and its narrower variants.
+     */
+    private record PersonRowMapper(PersonColumns person, PersonColumns spouse, PersonColumns child,
+                                   int[] home, int[] business) {
+        PersonRowMapper(Map<String, Integer> columnIndexes) {
+            this(PersonColumns.of(columnIndexes, "P_"), PersonColumns.of(columnIndexes, "S_"),
+                    PersonColumns.of(columnIndexes, "CHILD_"),
+                    AddressEntityMapper.INSTANCE.columnIndexes(columnIndexes, "HOME_"),
+                    AddressEntityMapper.INSTANCE.columnIndexes(columnIndexes, "BUSINESS_"));
+        }
 
-        return address;
+        // false for one row per person queries
+        boolean joinsAssociations() {
+            return spouse.id() != 0 || child.id() != 0 || home[0] != 0 || business[0] != 0;
+        }
     }
 
-    // Can be used in general way
-    private <T> T getValueByAlias(String alias, ResultSet rs, Class<T> clazz) throws SQLException {
-        int columnCount = rs.getMetaData().getColumnCount();
-        int foundIdx = getIndexForAlias(alias, rs, columnCount);
-        return foundIdx == 0 ? null : (T) rs.getObject(foundIdx);
-    }
+    // fields are the generated mapper's column indexes, the ID first, the rest are the association keys
+    private record PersonColumns(int[] fields, int homeAddress, int businessAddress, int spouseId, int parentId) {
+        static PersonColumns of(Map<String, Integer> columnIndexes, String aliasPrefix) {
+            return new PersonColumns(PersonEntityMapper.INSTANCE.columnIndexes(columnIndexes, aliasPrefix),
+                    columnIndexes.getOrDefault(aliasPrefix + "HOME_ADDRESS", 0),
+                    columnIndexes.getOrDefault(aliasPrefix + "BUSINESS_ADDRESS", 0),
+                    columnIndexes.getOrDefault(aliasPrefix + "SPOUSE_ID", 0),
+                    columnIndexes.getOrDefault(aliasPrefix + "PARENT_ID", 0));
+        }
 
-    private int getIndexForAlias(String alias, ResultSet rs, int columnCount) throws SQLException {
-        Integer foundIdx = aliasColIdxMap.getOrDefault(alias, 0);
-        if (foundIdx == 0) {
-            for(int colIdx = 1; colIdx<= columnCount; colIdx++){
-                if (alias.equals(rs.getMetaData().getColumnLabel(colIdx))){
-                    foundIdx = colIdx;
-                    aliasColIdxMap.put(alias, foundIdx);
-                    break;
-                }
-            }
+        int id() {
+            return fields[0];
         }
-        return foundIdx;
     }
 
     private static Timestamp convertDobToTimestamp(ZonedDateTime dob) {
-        return Timestamp.valueOf(dob.withZoneSameInstant(ZoneId.of("+0")).toLocalDateTime());
+        return Timestamp.valueOf(dob.withZoneSameInstant(UTC).toLocalDateTime());
     }
 
 
@@ -0,0 +1,222 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.Region;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+/**
+ * Read-only columnar copy of PEOPLE for in-memory analytics, one primitive array per column and one
+ * array index per person, ordered by ID. Names and regions are dictionary encoded, DOBs kept as UTC epoch
+ * seconds and salaries as cents, so a person takes under 40 bytes instead of a Person object graph.
+ * Filters are IntPredicates over row indexes, built by the snapshot and combined with and/or/negate;
+ * count and salaryStats run them as parallel scans on the common fork-join pool.
+ * Built by PeopleRepository.snapshot().
+ */
+public final class PeopleSnapshot {
+    /**
+     * Marks a null DOB or salary.
+     */
+    static final long NULL = Long.MIN_VALUE;
+    private static final Region[] REGIONS = Region.values();
+
+    private final int size;
+    private final long[] ids;
+    private final long[] dobs;
+    private final long[] salaryCents;
+    private final int[] firstNames;
+    private final int[] lastNames;
+    private final byte[] homeRegions;
+    private final byte[] businessRegions;
+    private final String[] names;
+    private final Map<String, Integer> nameCodes;
+
+    private PeopleSnapshot(Builder builder) {
+        this.size = builder.size;
+        this.ids = Arrays.copyOf(builder.ids, size);
+        this.dobs = Arrays.copyOf(builder.dobs, size);
+        this.salaryCents = Arrays.copyOf(builder.salaryCents, size);
+        this.firstNames = Arrays.copyOf(builder.firstNames, size);
+        this.lastNames = Arrays.copyOf(builder.lastNames, size);
+        this.homeRegions = Arrays.copyOf(builder.homeRegions, size);
+        this.businessRegions = Arrays.copyOf(builder.businessRegions, size);
+        this.names = builder.names.toArray(new String[0]);
+        this.nameCodes = builder.nameCodes;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long id(int row) {
+        return ids[row];
+    }
+
+    public IntPredicate firstNameIs(String firstName) {
+        int code = nameCodes.getOrDefault(firstName, -2);
+        return row -> firstNames[row] == code;
+    }
+
+    public IntPredicate lastNameIs(String lastName) {
+        int code = nameCodes.getOrDefault(lastName, -2);
+        return row -> lastNames[row] == code;
+    }
+
+    public IntPredicate homeRegionIs(Region region) {
+        byte ordinal = (byte) region.ordinal();
+        return row -> homeRegions[row] == ordinal;
+    }
+
+    public IntPredicate businessRegionIs(Region region) {
+        byte ordinal = (byte) region.ordinal();
+        return row -> businessRegions[row] == ordinal;
+    }
+
+    /**
+     * @param to exclusive
+     */
+    public IntPredicate bornBetween(ZonedDateTime from, ZonedDateTime to) {
+        long fromSecond = from.toEpochSecond();
+        long toSecond = to.toEpochSecond();
+        return row -> dobs[row] >= fromSecond && dobs[row] < toSecond;
+    }
+
+    /**
+     * Both ends inclusive, people without salary never match.
+     */
+    public IntPredicate salaryBetween(BigDecimal min, BigDecimal max) {
+        long minCents = cents(min);
+        long maxCents = cents(max);
+        return row -> salaryCents[row] != NULL && salaryCents[row] >= minCents && salaryCents[row] <= maxCents;
+    }
+
+    public long count(IntPredicate filter) {
+        return IntStream.range(0, size).parallel().filter(filter).count();
+    }
+
+    /**
+     * @return IDs of the matching people, ascending
+     */
+    public long[] ids(IntPredicate filter) {
+        return IntStream.range(0, size).parallel().filter(filter).mapToLong(row -> ids[row]).toArray();
+    }
+
+    /**
+     * Same figures as PeopleRepository.aggregate(PersonAggregation.groupBy().where(...)) gives, with no key.
+     */
+    public PersonStats salaryStats(IntPredicate filter) {
+        // headcount, salaries, sum, min, max
+        long[] totals = IntStream.range(0, size).parallel().filter(filter).collect(
+                () -> new long[]{0, 0, 0, Long.MAX_VALUE, Long.MIN_VALUE},
+                (acc, row) -> {
+                    acc[0]++;
+                    long salary = salaryCents[row];
+                    if (salary != NULL) {
+                        acc[1]++;
+                        acc[2] += salary;
+                        acc[3] = Math.min(acc[3], salary);
+                        acc[4] = Math.max(acc[4], salary);
+                    }
+                },
+                (acc, other) -> {
+                    acc[0] += other[0];
+                    acc[1] += other[1];
+                    acc[2] += other[2];
+                    acc[3] = Math.min(acc[3], other[3]);
+                    acc[4] = Math.max(acc[4], other[4]);
+                });
+        if (totals[1] == 0) return new PersonStats(List.of(), totals[0], null, null, null, null);
+        BigDecimal sum = BigDecimal.valueOf(totals[2], 2);
+        return new PersonStats(List.of(), totals[0], sum, sum.divide(BigDecimal.valueOf(totals[1]), 2, RoundingMode.HALF_EVEN),
+                BigDecimal.valueOf(totals[3], 2), BigDecimal.valueOf(totals[4], 2));
+    }
+
+    /**
+     * @return bytes held by the column arrays and the name dictionary, array headers left out
+     */
+    public long columnBytes() {
+        long bytes = (long) size * (Long.BYTES * 3 + Integer.BYTES * 2 + 2);
+        for (String name : names) {
+            bytes += name.length();
+        }
+        return bytes;
+    }
+
+    private static long cents(BigDecimal amount) {
+        return amount.setScale(2, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Appends one row per person, in the column order of PeopleRepository.SNAPSHOT_SQL.
+     */
+    static final class Builder {
+        private int size;
+        private long[] ids = new long[1024];
+        private long[] dobs = new long[1024];
+        private long[] salaryCents = new long[1024];
+        private int[] firstNames = new int[1024];
+        private int[] lastNames = new int[1024];
+        private byte[] homeRegions = new byte[1024];
+        private byte[] businessRegions = new byte[1024];
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> nameCodes = new HashMap<>();
+
+        void add(ResultSet rs) throws SQLException {
+            if (size == ids.length) grow();
+            ids[size] = rs.getLong(1);
+            firstNames[size] = encode(rs.getString(2));
+            lastNames[size] = encode(rs.getString(3));
+            Timestamp dob = rs.getTimestamp(4);
+            dobs[size] = dob == null ? NULL : dob.toLocalDateTime().toEpochSecond(ZoneOffset.UTC);
+            BigDecimal salary = rs.getBigDecimal(5);
+            salaryCents[size] = salary == null ? NULL : cents(salary);
+            homeRegions[size] = region(rs.getString(6));
+            businessRegions[size] = region(rs.getString(7));
+            size++;
+        }
+
+        PeopleSnapshot build() {
+            return new PeopleSnapshot(this);
+        }
+
+        private void grow() {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            dobs = Arrays.copyOf(dobs, capacity);
+            salaryCents = Arrays.copyOf(salaryCents, capacity);
+            firstNames = Arrays.copyOf(firstNames, capacity);
+            lastNames = Arrays.copyOf(lastNames, capacity);
+            homeRegions = Arrays.copyOf(homeRegions, capacity);
+            businessRegions = Arrays.copyOf(businessRegions, capacity);
+        }
+
+        // -1 for null
+        private int encode(String name) {
+            if (name == null) return -1;
+            return nameCodes.computeIfAbsent(name, key -> {
+                names.add(key);
+                return names.size() - 1;
+            });
+        }
+
+        private static byte region(String region) {
+            if (region == null) return -1;
+            for (Region candidate : REGIONS) {
+                if (candidate.name().equalsIgnoreCase(region)) return (byte) candidate.ordinal();
+            }
+            throw new IllegalArgumentException("Unknown region " + region);
+        }
+    }
+}
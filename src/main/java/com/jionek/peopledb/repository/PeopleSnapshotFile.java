@@ -0,0 +1,291 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.exception.DataException;
+import com.jionek.peopledb.model.Address;
+import com.jionek.peopledb.model.Person;
+import com.jionek.peopledb.model.Region;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * People with their addresses persisted to a local file and read back through a read-only memory mapping,
+ * to warm a service up without reading PEOPLE again. Written by PeopleRepository.writeSnapshotFile(Path),
+ * after mapping only the people saved since are read, see PeopleRepository.streamSavedAfter(PeopleSnapshotFile).
+ * <p>
+ * Layout, big-endian: a header with the high-water mark (the greatest ID written), the IDs ascending,
+ * then one fixed-width record per person in the same order, the address records people point to and
+ * the UTF-8 strings the records point to. findById binary searches the IDs in the mapped region and
+ * decodes just the record at the same position, nothing is read into the heap beforehand.
+ */
+public final class PeopleSnapshotFile {
+    private static final int MAGIC = 0x50444253;     // PDBS
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final ZoneId UTC = ZoneId.of("+0");
+    private static final Region[] REGIONS = Region.values();
+    /**
+     * Marks a null DOB or salary, strings and addresses use -1.
+     */
+    private static final long NULL = Long.MIN_VALUE;
+
+    // string references are offset and length into the strings section
+    private static final int FIRST_NAME = 0;
+    private static final int LAST_NAME = 8;
+    private static final int EMAIL = 16;
+    private static final int DOB_SECONDS = 24;
+    private static final int SALARY_CENTS = 32;
+    private static final int DOB_NANOS = 40;
+    private static final int HOME_ADDRESS = 44;
+    private static final int BUSINESS_ADDRESS = 48;
+    private static final int PERSON_BYTES = 56;
+
+    private static final int ADDRESS_ID = 0;
+    // STREET_ADDRESS, ADDRESS2, CITY, STATE, POSTCODE, COUNTY, COUNTRY
+    private static final int ADDRESS_STRINGS = 8;
+    private static final int REGION = 64;
+    private static final int ADDRESS_BYTES = 72;
+
+    private final ByteBuffer buffer;
+    private final long highWaterMark;
+    private final int size;
+    private final int personRecords;
+    private final int addressRecords;
+    private final int strings;
+
+    private PeopleSnapshotFile(ByteBuffer buffer, long highWaterMark, int size, int addresses) {
+        this.buffer = buffer;
+        this.highWaterMark = highWaterMark;
+        this.size = size;
+        this.personRecords = HEADER_BYTES + size * Long.BYTES;
+        this.addressRecords = personRecords + size * PERSON_BYTES;
+        this.strings = addressRecords + addresses * ADDRESS_BYTES;
+    }
+
+    /**
+     * Maps file read-only. The mapping lives as long as the returned snapshot is reachable.
+     * @throws DataException when file can't be read or isn't a complete snapshot file
+     */
+    public static PeopleSnapshotFile map(Path file) {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new DataException("People snapshot " + file + " is too large to map");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new DataException("Unable to map people snapshot " + file, e);
+        }
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new DataException(file + " is not a people snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new DataException("People snapshot %s has version %d, expected %d".formatted(file, buffer.getInt(4), VERSION));
+        }
+        int size = buffer.getInt(16);
+        int addresses = buffer.getInt(20);
+        long stringBytes = buffer.getLong(24);
+        if (HEADER_BYTES + (long) size * (Long.BYTES + PERSON_BYTES) + (long) addresses * ADDRESS_BYTES + stringBytes != buffer.capacity()) {
+            throw new DataException("People snapshot " + file + " is truncated");
+        }
+        return new PeopleSnapshotFile(buffer, buffer.getLong(8), size, addresses);
+    }
+
+    /**
+     * @return the greatest ID in the snapshot, Long.MIN_VALUE when it's empty
+     */
+    public long highWaterMark() {
+        return highWaterMark;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The person as written, with home and business address; spouse, parent and children are not kept.
+     */
+    public Optional<Person> findById(long id) {
+        int row = indexOf(id);
+        return row < 0 ? Optional.empty() : Optional.of(readPerson(id, personRecords + row * PERSON_BYTES));
+    }
+
+    public boolean contains(long id) {
+        return indexOf(id) >= 0;
+    }
+
+    private int indexOf(long id) {
+        if (id > highWaterMark) return -1;
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long candidate = buffer.getLong(HEADER_BYTES + middle * Long.BYTES);
+            if (candidate < id) {
+                low = middle + 1;
+            } else if (candidate > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private Person readPerson(long id, int record) {
+        long dobSeconds = buffer.getLong(record + DOB_SECONDS);
+        ZonedDateTime dob = dobSeconds == NULL ? null
+                : ZonedDateTime.ofInstant(Instant.ofEpochSecond(dobSeconds, buffer.getInt(record + DOB_NANOS)), UTC);
+        long salaryCents = buffer.getLong(record + SALARY_CENTS);
+        Person person = new Person(id, readString(record + FIRST_NAME), readString(record + LAST_NAME), dob,
+                salaryCents == NULL ? null : BigDecimal.valueOf(salaryCents, 2));
+        person.setEmail(readString(record + EMAIL));
+        person.setHomeAddress(readAddress(buffer.getInt(record + HOME_ADDRESS)));
+        person.setBusinessAddress(readAddress(buffer.getInt(record + BUSINESS_ADDRESS)));
+        return person;
+    }
+
+    private Address readAddress(int row) {
+        if (row < 0) return null;
+        int record = addressRecords + row * ADDRESS_BYTES;
+        byte region = buffer.get(record + REGION);
+        int field = record + ADDRESS_STRINGS;
+        return new Address(buffer.getLong(record + ADDRESS_ID), readString(field), readString(field + 8),
+                readString(field + 16), readString(field + 24), readString(field + 32), readString(field + 40),
+                region < 0 ? null : REGIONS[region], readString(field + 48));
+    }
+
+    private String readString(int reference) {
+        int length = buffer.getInt(reference + 4);
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(strings + buffer.getInt(reference), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes people, ascending by ID, to file through a temporary sibling moved over it once complete,
+     * so a snapshot being mapped is never seen half written.
+     * @return the high-water mark
+     */
+    static long write(Path file, Iterator<Person> people) {
+        Writer writer = new Writer();
+        while (people.hasNext()) {
+            writer.add(people.next());
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                writer.writeTo(out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new DataException("Unable to write people snapshot " + file, e);
+        }
+        return writer.highWaterMark;
+    }
+
+    /**
+     * Collects the sections in memory, their sizes go into the header. Addresses shared by several people
+     * and repeated strings are written once.
+     */
+    private static final class Writer {
+        private long highWaterMark = NULL;
+        private int size;
+        private final ByteArrayOutputStream ids = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream people = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream addresses = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        private final DataOutputStream idsOut = new DataOutputStream(ids);
+        private final DataOutputStream peopleOut = new DataOutputStream(people);
+        private final DataOutputStream addressesOut = new DataOutputStream(addresses);
+        private final Map<Long, Integer> addressRows = new HashMap<>();
+        private final Map<String, Integer> stringOffsets = new HashMap<>();
+
+        void add(Person person) {
+            long id = person.getId();
+            if (size > 0 && id <= highWaterMark) {
+                throw new IllegalArgumentException("People must be written ascending by ID, got " + id + " after " + highWaterMark);
+            }
+            try {
+                idsOut.writeLong(id);
+                writeString(peopleOut, person.getFirstName());
+                writeString(peopleOut, person.getLastName());
+                writeString(peopleOut, person.getEmail());
+                Instant dob = person.getDob() == null ? null : person.getDob().toInstant();
+                peopleOut.writeLong(dob == null ? NULL : dob.getEpochSecond());
+                peopleOut.writeLong(person.getSalary() == null ? NULL
+                        : person.getSalary().setScale(2, RoundingMode.HALF_EVEN).unscaledValue().longValueExact());
+                peopleOut.writeInt(dob == null ? 0 : dob.getNano());
+                peopleOut.writeInt(addressRow(person.getHomeAddress().orElse(null)));
+                peopleOut.writeInt(addressRow(person.getBusinessAddress().orElse(null)));
+                peopleOut.writeInt(0);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);     // in memory
+            }
+            highWaterMark = id;
+            size++;
+        }
+
+        private int addressRow(Address address) throws IOException {
+            if (address == null) return -1;
+            Integer row = addressRows.get(address.id());
+            if (row != null) return row;
+            row = addressRows.size();
+            addressRows.put(address.id(), row);
+            addressesOut.writeLong(address.id());
+            for (String field : new String[]{address.streetAddress(), address.address2(), address.city(), address.state(),
+                    address.postcode(), address.county(), address.country()}) {
+                writeString(addressesOut, field);
+            }
+            addressesOut.writeByte(address.region() == null ? -1 : address.region().ordinal());
+            addressesOut.write(new byte[ADDRESS_BYTES - REGION - 1]);
+            return row;
+        }
+
+        private void writeString(DataOutputStream out, String value) throws IOException {
+            if (value == null) {
+                out.writeInt(0);
+                out.writeInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            Integer offset = stringOffsets.get(value);
+            if (offset == null) {
+                offset = strings.size();
+                strings.write(bytes);
+                stringOffsets.put(value, offset);
+            }
+            out.writeInt(offset);
+            out.writeInt(bytes.length);
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(highWaterMark);
+            out.writeInt(size);
+            out.writeInt(addressRows.size());
+            out.writeLong(strings.size());
+            for (ByteArrayOutputStream section : new ByteArrayOutputStream[]{ids, people, addresses, strings}) {
+                section.writeTo(out);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.Region;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Headcount and salary statistics of people grouped in the database, i.e.
+ * PersonAggregation.groupBy(HOME_REGION).where(PersonCriteria.where(LAST_NAME.eq("Smith"))),
+ * one PersonStats per group, ordered by the group key. Without dimensions all matching people make one group.
+ * Like PersonCriteria, the SQL is generated once per shape, see PeopleRepository.aggregate(PersonAggregation).
+ */
+public final class PersonAggregation {
+
+    public static final Dimension<Region> HOME_REGION = new Dimension<>("HOME.REGION", PersonCriteria.HOME_JOIN, PersonAggregation::readRegion);
+    public static final Dimension<Region> BUSINESS_REGION = new Dimension<>("BUSINESS.REGION", PersonCriteria.BUSINESS_JOIN, PersonAggregation::readRegion);
+    /**
+     * Year of birth in UTC rounded down to the decade, i.e. 1980 for 1987.
+     */
+    public static final Dimension<Integer> BIRTH_DECADE = new Dimension<>("FLOOR(EXTRACT(YEAR FROM P.DOB) / 10) * 10", null, MapperSupport::readInteger);
+    public static final Dimension<Integer> BIRTH_YEAR = new Dimension<>("EXTRACT(YEAR FROM P.DOB)", null, MapperSupport::readInteger);
+    public static final Dimension<String> LAST_NAME = new Dimension<>("P.LAST_NAME", null, ResultSet::getString);
+
+    private static final String AGGREGATES_SQL = "COUNT(*), SUM(P.SALARY), AVG(P.SALARY), MIN(P.SALARY), MAX(P.SALARY)";
+    private static final ConcurrentHashMap<String, String> SQL_BY_SHAPE = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    private interface KeyReader<V> {
+        V read(ResultSet rs, int columnIndex) throws SQLException;
+    }
+
+    /**
+     * What people are grouped by, V being the type of its key values.
+     */
+    public static final class Dimension<V> {
+        private final String expression;
+        private final String join;
+        private final KeyReader<V> reader;
+
+        private Dimension(String expression, String join, KeyReader<V> reader) {
+            this.expression = expression;
+            this.join = join;
+            this.reader = reader;
+        }
+    }
+
+    private final List<Dimension<?>> dimensions;
+    private final PersonCriteria criteria;
+
+    private PersonAggregation(List<Dimension<?>> dimensions, PersonCriteria criteria) {
+        this.dimensions = dimensions;
+        this.criteria = criteria;
+    }
+
+    public static PersonAggregation groupBy(Dimension<?>... dimensions) {
+        return new PersonAggregation(List.of(dimensions), PersonCriteria.where());
+    }
+
+    /**
+     * @return this aggregation over the people matching criteria only
+     */
+    public PersonAggregation where(PersonCriteria criteria) {
+        return new PersonAggregation(dimensions, Objects.requireNonNull(criteria));
+    }
+
+    String sql() {
+        StringJoiner shape = new StringJoiner(",", "", "|" + criteria.shape());
+        for (Dimension<?> dimension : dimensions) {
+            shape.add(dimension.expression);
+        }
+        return SQL_BY_SHAPE.computeIfAbsent(shape.toString(), key -> generateSql());
+    }
+
+    private String generateSql() {
+        StringJoiner select = new StringJoiner(", ", "SELECT ", "\n");
+        StringJoiner groupBy = new StringJoiner(", ", "GROUP BY ", "\n");
+        StringJoiner orderBy = new StringJoiner(", ", "ORDER BY ", "\n");
+        groupBy.setEmptyValue("");
+        orderBy.setEmptyValue("");
+        List<String> joins = new ArrayList<>();
+        for (int i = 0; i < dimensions.size(); i++) {
+            Dimension<?> dimension = dimensions.get(i);
+            select.add(dimension.expression);
+            groupBy.add(dimension.expression);
+            orderBy.add(String.valueOf(i + 1));
+            if (dimension.join != null && !joins.contains(dimension.join)) joins.add(dimension.join);
+        }
+        select.add(AGGREGATES_SQL);
+        StringBuilder sql = new StringBuilder(select.toString()).append("FROM PEOPLE AS P\n");
+        for (String join : joins) {
+            sql.append(join).append('\n');
+        }
+        return sql.append(criteria.joinsAndWhere(joins)).append(groupBy).append(orderBy).toString();
+    }
+
+    void bind(PreparedStatement ps) throws SQLException {
+        criteria.bind(ps);
+    }
+
+    PersonStats read(ResultSet rs) throws SQLException {
+        Object[] key = new Object[dimensions.size()];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = dimensions.get(i).reader.read(rs, i + 1);
+        }
+        int aggregates = key.length + 1;
+        return new PersonStats(Collections.unmodifiableList(Arrays.asList(key)), rs.getLong(aggregates),
+                rs.getBigDecimal(aggregates + 1), rs.getBigDecimal(aggregates + 2),
+                rs.getBigDecimal(aggregates + 3), rs.getBigDecimal(aggregates + 4));
+    }
+
+    static int cachedShapes() {
+        return SQL_BY_SHAPE.size();
+    }
+
+    private static Region readRegion(ResultSet rs, int columnIndex) throws SQLException {
+        return MapperSupport.readEnum(rs, columnIndex, Region.class);
+    }
+}
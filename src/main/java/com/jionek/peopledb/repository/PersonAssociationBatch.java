@@ -0,0 +1,124 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.Address;
+import com.jionek.peopledb.model.AssociationLoader;
+import com.jionek.peopledb.model.Person;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Lazy associations of the people read by one query, loaded DataLoader style: the first access of
+ * an association on any of them fetches it for all of them, with one query per association type
+ * (per IdBuckets.MAX_SIZE IDs). People loaded that way are lazy again, in a batch of their own,
+ * so walking a family tree costs one query per level instead of one per person.
+ */
+final class PersonAssociationBatch implements AssociationLoader {
+
+    /**
+     * Foreign keys read with the person, null when the column is NULL.
+     */
+    record Keys(Long spouseId, Long homeAddressId, Long businessAddressId) { }
+
+    private final PeopleRepository peopleRepository;
+    private final AddressRepository addressRepository;
+    private final Map<Person, Keys> members = new IdentityHashMap<>();
+    // people of one batch may end up on different threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private Map<Long, Person> spousesById;
+    private Map<Long, List<Person>> childrenByParentId;
+    private Map<Long, Address> addressesById;
+
+    PersonAssociationBatch(PeopleRepository peopleRepository, AddressRepository addressRepository) {
+        this.peopleRepository = peopleRepository;
+        this.addressRepository = addressRepository;
+    }
+
+    void add(Person person, Keys keys) {
+        lock.lock();
+        try {
+            members.put(person, keys);
+        } finally {
+            lock.unlock();
+        }
+        person.setAssociationLoader(this);
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return members.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<Person> loadSpouse(Person person) {
+        lock.lock();
+        try {
+            if (spousesById == null) {
+                spousesById = byId(peopleRepository.findAllById(memberKeys(Keys::spouseId)));
+            }
+            Long spouseId = members.get(person).spouseId();
+            return Optional.ofNullable(spouseId == null ? null : spousesById.get(spouseId));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Set<Person> loadChildren(Person person) {
+        lock.lock();
+        try {
+            if (childrenByParentId == null) {
+                List<Long> parentIds = members.keySet().stream().map(Person::getId).distinct().toList();
+                childrenByParentId = peopleRepository.findChildren(parentIds);
+            }
+            return new HashSet<>(childrenByParentId.getOrDefault(person.getId(), List.of()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<Address> loadHomeAddress(Person person) {
+        return loadAddress(person, Keys::homeAddressId);
+    }
+
+    @Override
+    public Optional<Address> loadBusinessAddress(Person person) {
+        return loadAddress(person, Keys::businessAddressId);
+    }
+
+    private Optional<Address> loadAddress(Person person, Function<Keys, Long> addressId) {
+        lock.lock();
+        try {
+            if (addressesById == null) {
+                Set<Long> ids = new LinkedHashSet<>(memberKeys(Keys::homeAddressId));
+                ids.addAll(memberKeys(Keys::businessAddressId));
+                addressesById = new HashMap<>();
+                for (Address address : addressRepository.findAllById(ids)) {
+                    addressesById.put(address.id(), address);
+                }
+            }
+            Long id = addressId.apply(members.get(person));
+            return Optional.ofNullable(id == null ? null : addressesById.get(id));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<Long> memberKeys(Function<Keys, Long> key) {
+        return members.values().stream().map(key).filter(Objects::nonNull).distinct().toList();
+    }
+
+    private static Map<Long, Person> byId(List<Person> people) {
+        Map<Long, Person> byId = new HashMap<>();
+        for (Person person : people) {
+            byId.put(person.getId(), person);
+        }
+        return byId;
+    }
+}
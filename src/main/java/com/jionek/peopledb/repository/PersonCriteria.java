@@ -0,0 +1,182 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.Region;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Typed conditions on people, ANDed together, i.e.
+ * PersonCriteria.where(LAST_NAME.eq("Smith"), SALARY.between(min, max), HOME_REGION.eq(Region.WEST)).
+ * The SQL is generated once per shape, the attributes and operators in order, with the values bound as parameters,
+ * so every use of a shape runs the same prepared statement. See PeopleRepository.findAll(PersonCriteria).
+ */
+public final class PersonCriteria {
+    private static final ZoneId UTC = ZoneId.of("+0");
+    static final String HOME_JOIN = "LEFT JOIN ADDRESSES AS HOME ON P.HOME_ADDRESS = HOME.ID";
+    static final String BUSINESS_JOIN = "LEFT JOIN ADDRESSES AS BUSINESS ON P.BUSINESS_ADDRESS = BUSINESS.ID";
+
+    public static final Attribute<String> FIRST_NAME = new Attribute<>("P.FIRST_NAME", null, name -> name);
+    public static final Attribute<String> LAST_NAME = new Attribute<>("P.LAST_NAME", null, name -> name);
+    public static final Attribute<String> EMAIL = new Attribute<>("P.EMAIL", null, email -> email);
+    public static final Attribute<BigDecimal> SALARY = new Attribute<>("P.SALARY", null, salary -> salary);
+    public static final Attribute<ZonedDateTime> DOB = new Attribute<>("P.DOB", null,
+            dob -> Timestamp.valueOf(dob.withZoneSameInstant(UTC).toLocalDateTime()));
+    public static final Attribute<Region> HOME_REGION = new Attribute<>("HOME.REGION", HOME_JOIN, Region::name);
+    public static final Attribute<Region> BUSINESS_REGION = new Attribute<>("BUSINESS.REGION", BUSINESS_JOIN, Region::name);
+
+    private static final String SELECT_PERSON_SQL = """
+            SELECT
+            P.ID AS P_ID, P.FIRST_NAME AS P_FIRST_NAME, P.LAST_NAME AS P_LAST_NAME, P.DOB AS P_DOB, P.SALARY AS P_SALARY,
+            P.HOME_ADDRESS AS P_HOME_ADDRESS, P.BUSINESS_ADDRESS AS P_BUSINESS_ADDRESS, P.SPOUSE_ID AS P_SPOUSE_ID, P.PARENT_ID AS P_PARENT_ID
+            FROM PEOPLE AS P
+            """;
+    private static final ConcurrentHashMap<String, String> SQL_BY_SHAPE = new ConcurrentHashMap<>();
+
+    private enum Operator {
+        EQ("= ?"),
+        LESS_THAN("< ?"),
+        GREATER_THAN("> ?"),
+        BETWEEN("BETWEEN ? AND ?"),
+        IS_NULL("IS NULL");
+
+        private final String sql;
+
+        Operator(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    /**
+     * A column people can be filtered on, V being the type of its values.
+     */
+    public static final class Attribute<V> {
+        private final String column;
+        private final String join;
+        private final Function<V, Object> toJdbc;
+
+        private Attribute(String column, String join, Function<V, Object> toJdbc) {
+            this.column = column;
+            this.join = join;
+            this.toJdbc = toJdbc;
+        }
+
+        public Condition eq(V value) {
+            return new Condition(this, Operator.EQ, List.of(toJdbc.apply(Objects.requireNonNull(value))));
+        }
+
+        public Condition lessThan(V value) {
+            return new Condition(this, Operator.LESS_THAN, List.of(toJdbc.apply(Objects.requireNonNull(value))));
+        }
+
+        public Condition greaterThan(V value) {
+            return new Condition(this, Operator.GREATER_THAN, List.of(toJdbc.apply(Objects.requireNonNull(value))));
+        }
+
+        /**
+         * Both ends inclusive.
+         */
+        public Condition between(V min, V max) {
+            return new Condition(this, Operator.BETWEEN,
+                    List.of(toJdbc.apply(Objects.requireNonNull(min)), toJdbc.apply(Objects.requireNonNull(max))));
+        }
+
+        public Condition isNull() {
+            return new Condition(this, Operator.IS_NULL, List.of());
+        }
+    }
+
+    public static final class Condition {
+        private final Attribute<?> attribute;
+        private final Operator operator;
+        private final List<Object> values;
+
+        private Condition(Attribute<?> attribute, Operator operator, List<Object> values) {
+            this.attribute = attribute;
+            this.operator = operator;
+            this.values = values;
+        }
+    }
+
+    private final List<Condition> conditions;
+
+    private PersonCriteria(List<Condition> conditions) {
+        this.conditions = conditions;
+    }
+
+    /**
+     * @param conditions all have to hold, none matches every person
+     */
+    public static PersonCriteria where(Condition... conditions) {
+        return new PersonCriteria(List.of(conditions));
+    }
+
+    public PersonCriteria and(Condition condition) {
+        List<Condition> all = new ArrayList<>(conditions);
+        all.add(Objects.requireNonNull(condition));
+        return new PersonCriteria(List.copyOf(all));
+    }
+
+    /**
+     * @return SELECT of one row per person ordered by ID, the same text for every criteria of this shape
+     */
+    String sql() {
+        return SQL_BY_SHAPE.computeIfAbsent(shape(), key -> SELECT_PERSON_SQL + joinsAndWhere(List.of()) + "ORDER BY P.ID\n");
+    }
+
+    /**
+     * @return the attributes and operators in order, equal for criteria running the same SQL
+     */
+    String shape() {
+        StringJoiner shape = new StringJoiner(",");
+        for (Condition condition : conditions) {
+            shape.add(condition.attribute.column + " " + condition.operator);
+        }
+        return shape.toString();
+    }
+
+    /**
+     * @param joined joins the query already has, not repeated
+     * @return the other joins the conditions need and the WHERE clause, to follow "FROM PEOPLE AS P"
+     */
+    String joinsAndWhere(List<String> joined) {
+        StringBuilder sql = new StringBuilder();
+        List<String> joins = new ArrayList<>(joined);
+        for (Condition condition : conditions) {
+            String join = condition.attribute.join;
+            if (join != null && !joins.contains(join)) {
+                joins.add(join);
+                sql.append(join).append('\n');
+            }
+        }
+        StringJoiner where = new StringJoiner(" AND ", "WHERE ", "\n");
+        where.setEmptyValue("");
+        for (Condition condition : conditions) {
+            where.add(condition.attribute.column + " " + condition.operator.sql);
+        }
+        return sql.append(where).toString();
+    }
+
+    void bind(PreparedStatement ps) throws SQLException {
+        int parameterIndex = 1;
+        for (Condition condition : conditions) {
+            for (Object value : condition.values) {
+                ps.setObject(parameterIndex++, value);
+            }
+        }
+    }
+
+    static int cachedShapes() {
+        return SQL_BY_SHAPE.size();
+    }
+}
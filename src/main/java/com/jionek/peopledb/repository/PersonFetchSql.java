@@ -0,0 +1,90 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.Fetch;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * SQL of the fetch profiles, generated once per combination of Fetch values. Each profile selects the person
+ * with its foreign keys plus the columns and LEFT JOINs of the fetched associations only, aliased like
+ * PeopleRepository.FIND_BY_ID_SQL, so one compiled row mapper per profile decodes it.
+ */
+final class PersonFetchSql {
+    private static final String PERSON_COLUMNS = """
+            P.ID AS P_ID, P.FIRST_NAME AS P_FIRST_NAME, P.LAST_NAME AS P_LAST_NAME, P.DOB AS P_DOB, P.SALARY AS P_SALARY,
+            P.EMAIL AS P_EMAIL, P.HOME_ADDRESS AS P_HOME_ADDRESS, P.BUSINESS_ADDRESS AS P_BUSINESS_ADDRESS,
+            P.SPOUSE_ID AS P_SPOUSE_ID, P.PARENT_ID AS P_PARENT_ID""";
+    private static final String SPOUSE_COLUMNS = """
+            S.ID AS S_ID, S.FIRST_NAME AS S_FIRST_NAME, S.LAST_NAME AS S_LAST_NAME, S.DOB AS S_DOB, S.SALARY AS S_SALARY,
+            S.HOME_ADDRESS AS S_HOME_ADDRESS, S.BUSINESS_ADDRESS AS S_BUSINESS_ADDRESS, S.SPOUSE_ID AS S_SPOUSE_ID, S.PARENT_ID AS S_PARENT_ID""";
+    private static final String CHILD_COLUMNS = """
+            CHILD.ID AS CHILD_ID, CHILD.FIRST_NAME AS CHILD_FIRST_NAME, CHILD.LAST_NAME AS CHILD_LAST_NAME,
+            CHILD.DOB AS CHILD_DOB, CHILD.SALARY AS CHILD_SALARY, CHILD.PARENT_ID AS CHILD_PARENT_ID""";
+    private static final String ADDRESS_COLUMNS = """
+            HOME.ID AS HOME_ID, HOME.STREET_ADDRESS AS HOME_STREET_ADDRESS, HOME.ADDRESS2 AS HOME_ADDRESS2, HOME.CITY AS HOME_CITY,
+            HOME.STATE AS HOME_STATE, HOME.POSTCODE AS HOME_POSTCODE, HOME.COUNTY AS HOME_COUNTY, HOME.REGION AS HOME_REGION, HOME.COUNTRY AS HOME_COUNTRY,
+            BUSINESS.ID AS BUSINESS_ID, BUSINESS.STREET_ADDRESS AS BUSINESS_STREET_ADDRESS, BUSINESS.ADDRESS2 AS BUSINESS_ADDRESS2,
+            BUSINESS.CITY AS BUSINESS_CITY, BUSINESS.STATE AS BUSINESS_STATE, BUSINESS.POSTCODE AS BUSINESS_POSTCODE,
+            BUSINESS.COUNTY AS BUSINESS_COUNTY, BUSINESS.REGION AS BUSINESS_REGION, BUSINESS.COUNTRY AS BUSINESS_COUNTRY""";
+
+    private record Statements(String findById, String findAll) { }
+
+    private static final ConcurrentHashMap<Set<Fetch>, Statements> STATEMENTS = new ConcurrentHashMap<>();
+    /**
+     * People with an ID above the one bound to its only parameter and their addresses, one row per person by ID.
+     */
+    static final String STREAM_AFTER_ID_WITH_ADDRESSES = select(EnumSet.of(Fetch.ADDRESSES), "PEOPLE AS P")
+            + "WHERE P.ID > ?\nORDER BY P.ID\n";
+
+    private PersonFetchSql() {
+    }
+
+    /**
+     * @return SQL selecting one person by the ID bound to its only parameter
+     */
+    static String findById(Fetch... fetch) {
+        return statements(fetch).findById();
+    }
+
+    /**
+     * @return SQL selecting the first 100 people by ID, like FIND_ALL_SQL but counting people, not joined rows
+     */
+    static String findAll(Fetch... fetch) {
+        return statements(fetch).findAll();
+    }
+
+    static Set<Fetch> profile(Fetch... fetch) {
+        EnumSet<Fetch> profile = EnumSet.noneOf(Fetch.class);
+        for (Fetch association : fetch) {
+            profile.add(association);
+        }
+        return profile;
+    }
+
+    private static Statements statements(Fetch... fetch) {
+        return STATEMENTS.computeIfAbsent(profile(fetch), profile -> new Statements(
+                select(profile, "PEOPLE AS P") + "WHERE P.ID=?\n",
+                select(profile, "(SELECT * FROM PEOPLE ORDER BY ID LIMIT 100) AS P") + "ORDER BY P.ID\n"));
+    }
+
+    private static String select(Set<Fetch> profile, String from) {
+        StringBuilder sql = new StringBuilder("SELECT\n").append(PERSON_COLUMNS);
+        StringBuilder joins = new StringBuilder();
+        if (profile.contains(Fetch.SPOUSE)) {
+            sql.append(",\n").append(SPOUSE_COLUMNS);
+            joins.append("LEFT JOIN PEOPLE AS S ON P.SPOUSE_ID = S.ID\n");
+        }
+        if (profile.contains(Fetch.CHILDREN)) {
+            sql.append(",\n").append(CHILD_COLUMNS);
+            joins.append("LEFT JOIN PEOPLE AS CHILD ON P.ID = CHILD.PARENT_ID\n");
+        }
+        if (profile.contains(Fetch.ADDRESSES)) {
+            sql.append(",\n").append(ADDRESS_COLUMNS);
+            joins.append("LEFT JOIN ADDRESSES AS HOME ON P.HOME_ADDRESS = HOME.ID\n");
+            joins.append("LEFT JOIN ADDRESSES AS BUSINESS ON P.BUSINESS_ADDRESS = BUSINESS.ID\n");
+        }
+        return sql.append("\nFROM ").append(from).append('\n').append(joins).toString();
+    }
+}
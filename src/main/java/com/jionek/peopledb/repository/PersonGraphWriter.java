@@ -0,0 +1,150 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.exception.DataException;
+import com.jionek.peopledb.exception.UnableToSaveException;
+import com.jionek.peopledb.model.Address;
+import com.jionek.peopledb.model.CrudOperation;
+import com.jionek.peopledb.model.Person;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Saves whole Person graphs in dependency order: all new addresses, then people level by level,
+ * a person's level being one more than the levels of the spouse and parent it points to.
+ * Every level goes out as one JDBC batch (per batchSize rows), so saving a family costs
+ * a constant number of round trips instead of one per person and address.
+ * <p>
+ * The roots are always inserted, like save() always did. People and addresses reached from them
+ * are inserted only when they have no ID yet, and each instance only once.
+ * Spouses pointing at each other can't both go first: the one written earlier gets its SPOUSE_ID
+ * filled in by an UPDATE batch at the end.
+ */
+final class PersonGraphWriter {
+    private static final String UPDATE_SPOUSE_SQL = "UPDATE PEOPLE SET SPOUSE_ID=? WHERE ID=?";
+
+    private final PeopleRepository peopleRepository;
+    private final AddressRepository addressRepository;
+
+    PersonGraphWriter(PeopleRepository peopleRepository, AddressRepository addressRepository) {
+        this.peopleRepository = peopleRepository;
+        this.addressRepository = addressRepository;
+    }
+
+    void write(Collection<Person> roots, int batchSize) {
+        List<Person> people = collectPeople(roots);
+        addressRepository.saveAll(collectNewAddresses(people), batchSize);
+
+        Set<Person> toWrite = identitySet(people);
+        Map<Person, Integer> levels = new IdentityHashMap<>();
+        List<Person> deferredSpouses = new ArrayList<>();
+        for (Person person : people) {
+            levelOf(person, toWrite, levels, identitySet(List.of()), deferredSpouses);
+        }
+        for (List<Person> level : groupByLevel(people, levels)) {
+            for (int from = 0; from < level.size(); from += batchSize) {
+                peopleRepository.insertBatch(level.subList(from, Math.min(from + batchSize, level.size())));
+            }
+        }
+        if (!deferredSpouses.isEmpty()) {
+            updateSpouses(deferredSpouses);
+        }
+    }
+
+    private static List<Person> collectPeople(Collection<Person> roots) {
+        List<Person> people = new ArrayList<>();
+        Set<Person> seen = identitySet(List.of());
+        Deque<Person> pending = new ArrayDeque<>();
+        for (Person root : roots) {
+            if (seen.add(root)) {
+                people.add(root);
+                pending.add(root);
+            }
+        }
+        while (!pending.isEmpty()) {
+            Person person = pending.poll();
+            List<Person> related = new ArrayList<>(person.getChildren());
+            person.getSpouse().ifPresent(related::add);
+            person.getParent().ifPresent(related::add);
+            for (Person other : related) {
+                if (other.getId() == null && seen.add(other)) {
+                    people.add(other);
+                    pending.add(other);
+                }
+            }
+        }
+        return people;
+    }
+
+    private static List<Address> collectNewAddresses(List<Person> people) {
+        List<Address> addresses = new ArrayList<>();
+        Set<Address> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Person person : people) {
+            for (Optional<Address> address : List.of(person.getHomeAddress(), person.getBusinessAddress())) {
+                if (address.isPresent() && address.get().id() == null && seen.add(address.get())) {
+                    addresses.add(address.get());
+                }
+            }
+        }
+        return addresses;
+    }
+
+    private static int levelOf(Person person, Set<Person> toWrite, Map<Person, Integer> levels,
+                               Set<Person> visiting, List<Person> deferredSpouses) {
+        Integer known = levels.get(person);
+        if (known != null) return known;
+        visiting.add(person);
+        int level = 0;
+        Optional<Person> parent = person.getParent().filter(toWrite::contains);
+        if (parent.isPresent()) {
+            if (visiting.contains(parent.get())) throw new DataException("Cycle in parent links of " + person);
+            level = levelOf(parent.get(), toWrite, levels, visiting, deferredSpouses) + 1;
+        }
+        Optional<Person> spouse = person.getSpouse().filter(toWrite::contains);
+        if (spouse.isPresent()) {
+            if (visiting.contains(spouse.get())) {
+                deferredSpouses.add(person);
+            } else {
+                level = Math.max(level, levelOf(spouse.get(), toWrite, levels, visiting, deferredSpouses) + 1);
+            }
+        }
+        visiting.remove(person);
+        levels.put(person, level);
+        return level;
+    }
+
+    private static List<List<Person>> groupByLevel(List<Person> people, Map<Person, Integer> levels) {
+        List<List<Person>> byLevel = new ArrayList<>();
+        for (Person person : people) {
+            int level = levels.get(person);
+            while (byLevel.size() <= level) {
+                byLevel.add(new ArrayList<>());
+            }
+            byLevel.get(level).add(person);
+        }
+        return byLevel;
+    }
+
+    private void updateSpouses(List<Person> people) {
+        try (StatementProbe probe = peopleRepository.probe(CrudOperation.UPDATE);
+             Session session = peopleRepository.source.open()) {
+            PreparedStatement ps = session.prepare(CrudOperation.UPDATE, UPDATE_SPOUSE_SQL);
+            for (Person person : people) {
+                ps.setLong(1, person.getSpouse().get().getId());
+                ps.setLong(2, person.getId());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            probe.completed(people.size());
+        } catch (SQLException e) {
+            throw new UnableToSaveException("Unable to link spouses", e);
+        }
+    }
+
+    private static Set<Person> identitySet(Collection<Person> people) {
+        Set<Person> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(people);
+        return set;
+    }
+}
@@ -0,0 +1,14 @@
+package com.jionek.peopledb.repository;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * One group of a PersonAggregation, computed by the database.
+ * @param key values of the grouping dimensions in order, null for people without one, i.e. without a home address
+ * @param headcount people in the group
+ * @param totalSalary salary aggregates over the people with a salary, null when none has one
+ */
+public record PersonStats(List<Object> key, long headcount, BigDecimal totalSalary, BigDecimal averageSalary,
+                          BigDecimal minSalary, BigDecimal maxSalary) {
+}
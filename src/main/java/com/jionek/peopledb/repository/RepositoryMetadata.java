@@ -0,0 +1,146 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.annotation.Id;
+import com.jionek.peopledb.annotation.MultiSql;
+import com.jionek.peopledb.annotation.SQL;
+import com.jionek.peopledb.exception.DataException;
+import com.jionek.peopledb.model.CrudOperation;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Everything CrudRepository used to find by reflection on each call: the @SQL/@MultiSql statements
+ * of a repository class and the handles for its entity's @Id field.
+ * Built once per repository class and shared by all of its instances. Classes compiled with the
+ * peopledb-processor take both from GeneratedRepositoryMetadata, only the others are scanned.
+ */
+final class RepositoryMetadata {
+    private static final ClassValue<RepositoryMetadata> METADATA = new ClassValue<>() {
+        @Override
+        protected RepositoryMetadata computeValue(Class<?> repositoryClass) {
+            return new RepositoryMetadata(repositoryClass);
+        }
+    };
+    private static final MethodType ID_GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType ID_SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Class<?> entityClass;
+    private final Map<CrudOperation, String> sqlByOperation;
+    private final EntityMapper<Object> mapper;
+    private final MethodHandle idGetter;
+    private final MethodHandle idSetter;
+
+    @SuppressWarnings("unchecked")
+    private RepositoryMetadata(Class<?> repositoryClass) {
+        this.entityClass = resolveEntityClass(repositoryClass);
+        Map<CrudOperation, String> generatedSql = GeneratedRepositoryMetadata.sql(repositoryClass);
+        this.sqlByOperation = generatedSql != null ? generatedSql : collectSql(repositoryClass);
+        this.mapper = (EntityMapper<Object>) GeneratedRepositoryMetadata.mapper(entityClass);
+        if (mapper != null) {
+            this.idGetter = null;
+            this.idSetter = null;
+            return;
+        }
+        Field idField = Arrays.stream(entityClass.getDeclaredFields())
+                .filter(field -> field.isAnnotationPresent(Id.class))
+                .findFirst().orElseThrow(() -> new DataException("No ID annotated field founded in " + entityClass.getName()));
+        try {
+            idField.setAccessible(true);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            this.idGetter = lookup.unreflectGetter(idField).asType(ID_GETTER_TYPE);
+            this.idSetter = lookup.unreflectSetter(idField).asType(ID_SETTER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new DataException("Unable to access ID field of " + entityClass.getName(), e);
+        }
+    }
+
+    static RepositoryMetadata of(Class<?> repositoryClass) {
+        return METADATA.get(repositoryClass);
+    }
+
+    Class<?> entityClass() {
+        return entityClass;
+    }
+
+    /**
+     * @return the generated mapper of the entity, null when it isn't a @Table entity
+     */
+    EntityMapper<Object> mapper() {
+        return mapper;
+    }
+
+    /**
+     * @return SQL declared with @SQL for the operation or null when the repository relies on the getter
+     */
+    String sql(CrudOperation operationType) {
+        return sqlByOperation.get(operationType);
+    }
+
+    Map<CrudOperation, String> sqlByOperation() {
+        return Collections.unmodifiableMap(sqlByOperation);
+    }
+
+    Long getId(Object entity) {
+        if (mapper != null) return mapper.getId(entity);
+        try {
+            return (Long) (Object) idGetter.invokeExact(entity);
+        } catch (Throwable e) {
+            throw new DataException("Unable to get ID field value", e);
+        }
+    }
+
+    void setId(Object entity, Long id) {
+        if (mapper != null) {
+            mapper.setId(entity, id);
+            return;
+        }
+        try {
+            idSetter.invokeExact(entity, (Object) id);
+        } catch (Throwable e) {
+            throw new DataException("Unable to set ID field value", e);
+        }
+    }
+
+    // @MultiSql entries win over single @SQL entries, same as the old stream based lookup
+    private static Map<CrudOperation, String> collectSql(Class<?> repositoryClass) {
+        Map<CrudOperation, String> sql = new EnumMap<>(CrudOperation.class);
+        Method[] methods = repositoryClass.getDeclaredMethods();
+        for (Method method : methods) {
+            MultiSql multiSql = method.getAnnotation(MultiSql.class);
+            if (multiSql != null) {
+                for (SQL annotation : multiSql.value()) {
+                    sql.putIfAbsent(annotation.operationType(), annotation.value());
+                }
+            }
+        }
+        for (Method method : methods) {
+            SQL annotation = method.getAnnotation(SQL.class);
+            if (annotation != null) {
+                sql.putIfAbsent(annotation.operationType(), annotation.value());
+            }
+        }
+        return sql;
+    }
+
+    private static Class<?> resolveEntityClass(Class<?> repositoryClass) {
+        for (Class<?> type = repositoryClass; type != null; type = type.getSuperclass()) {
+            Type superType = type.getGenericSuperclass();
+            if (superType instanceof ParameterizedType parameterized
+                    && parameterized.getRawType() == CrudRepository.class
+                    && parameterized.getActualTypeArguments()[0] instanceof Class<?> entityClass) {
+                return entityClass;
+            }
+        }
+        throw new DataException("Unable to resolve entity type of " + repositoryClass.getName());
+    }
+}
@@ -0,0 +1,23 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.CrudOperation;
+
+/**
+ * Receives one call per statement a repository executes. Plug it in with CrudRepository.setMetrics,
+ * HistogramMetrics keeps latency histograms and counters, other implementations can forward to any metrics system.
+ * Called from every thread using the repository, so implementations must be thread-safe and should not block.
+ */
+@FunctionalInterface
+public interface RepositoryMetrics {
+
+    /**
+     * Records nothing, repositories using it don't even read the clock.
+     */
+    RepositoryMetrics NONE = (operation, elapsedNanos, rows, failed) -> { };
+
+    /**
+     * @param rows rows affected by an update, or read by a query
+     * @param failed whether the statement or mapping its results threw
+     */
+    void record(CrudOperation operation, long elapsedNanos, long rows, boolean failed);
+}
@@ -0,0 +1,52 @@
+package com.jionek.peopledb.repository;
+
+import java.lang.ref.WeakReference;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Compiles a row mapper once per result set shape, i.e. per list of column labels, and reuses it
+ * for every row and every later query of that shape. Mappers get the label to index map once
+ * and keep plain int indexes, so no metadata is touched while reading rows.
+ */
+final class RowMapperCache<M> {
+
+    private record Current<M>(WeakReference<ResultSet> resultSet, M mapper) { }
+
+    private final Function<Map<String, Integer>, M> compiler;
+    private final ConcurrentHashMap<String, M> mappersByShape = new ConcurrentHashMap<>();
+    // the result set this thread read last, following rows of it skip the shape lookup
+    private final ThreadLocal<Current<M>> current = new ThreadLocal<>();
+
+    RowMapperCache(Function<Map<String, Integer>, M> compiler) {
+        this.compiler = compiler;
+    }
+
+    M mapperFor(ResultSet rs) throws SQLException {
+        Current<M> last = current.get();
+        if (last != null && last.resultSet().get() == rs) return last.mapper();
+
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        Map<String, Integer> columnIndexes = new HashMap<>();
+        StringJoiner shape = new StringJoiner(",");
+        for (int colIdx = 1; colIdx <= columnCount; colIdx++) {
+            String label = metaData.getColumnLabel(colIdx).toUpperCase();
+            columnIndexes.putIfAbsent(label, colIdx);
+            shape.add(label);
+        }
+        M mapper = mappersByShape.computeIfAbsent(shape.toString(), key -> compiler.apply(columnIndexes));
+        current.set(new Current<>(new WeakReference<>(rs), mapper));
+        return mapper;
+    }
+
+    int compiledShapes() {
+        return mappersByShape.size();
+    }
+}
@@ -0,0 +1,138 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.exception.DataException;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Creates the PEOPLE and ADDRESSES tables and the indexes the person graph queries join on, on H2 and MySQL.
+ * Safe to run on every startup, only what is missing gets created. bootstrap() then has the IndexAdvisor
+ * check the plans of the repositories' @SQL queries.
+ */
+public class SchemaBootstrap {
+    private static final List<String> TABLES = List.of("""
+            CREATE TABLE IF NOT EXISTS ADDRESSES (ID BIGINT AUTO_INCREMENT PRIMARY KEY, STREET_ADDRESS VARCHAR(255),
+            ADDRESS2 VARCHAR(255), CITY VARCHAR(255), STATE VARCHAR(255), POSTCODE VARCHAR(255), COUNTY VARCHAR(255),
+            REGION VARCHAR(255), COUNTRY VARCHAR(255), CONTENT_HASH CHAR(64) UNIQUE)
+            """, """
+            CREATE TABLE IF NOT EXISTS PEOPLE (ID BIGINT AUTO_INCREMENT PRIMARY KEY, FIRST_NAME VARCHAR(255),
+            LAST_NAME VARCHAR(255), DOB TIMESTAMP, SALARY DECIMAL(15,2), EMAIL VARCHAR(255), HOME_ADDRESS BIGINT,
+            BUSINESS_ADDRESS BIGINT, SPOUSE_ID BIGINT, PARENT_ID BIGINT)
+            """);
+
+    /**
+     * An index on one column, created when the table has no index starting with that column.
+     */
+    record Index(String name, String table, String column) {
+        String createSql() {
+            return "CREATE INDEX " + name + " ON " + table + " (" + column + ")";
+        }
+    }
+
+    // children are joined and loaded by PARENT_ID, the others are the foreign keys people are looked up by
+    static final List<Index> INDEXES = List.of(
+            new Index("PEOPLE_PARENT_ID", "PEOPLE", "PARENT_ID"),
+            new Index("PEOPLE_SPOUSE_ID", "PEOPLE", "SPOUSE_ID"),
+            new Index("PEOPLE_HOME_ADDRESS", "PEOPLE", "HOME_ADDRESS"),
+            new Index("PEOPLE_BUSINESS_ADDRESS", "PEOPLE", "BUSINESS_ADDRESS"));
+
+    private final DataSource dataSource;
+    private final Connection connection;
+    private final boolean strict;
+
+    /**
+     * Bootstrap on the caller's connection, left open.
+     */
+    public SchemaBootstrap(Connection connection) {
+        this(connection, false);
+    }
+
+    /**
+     * @param strict whether bootstrap() fails on full scans instead of warning
+     */
+    public SchemaBootstrap(Connection connection, boolean strict) {
+        this.dataSource = null;
+        this.connection = connection;
+        this.strict = strict;
+    }
+
+    public SchemaBootstrap(DataSource dataSource) {
+        this(dataSource, false);
+    }
+
+    /**
+     * @param strict whether bootstrap() fails on full scans instead of warning
+     */
+    public SchemaBootstrap(DataSource dataSource, boolean strict) {
+        this.dataSource = dataSource;
+        this.connection = null;
+        this.strict = strict;
+    }
+
+    /**
+     * Creates the schema, then checks the plans of all @SQL queries.
+     * @return the full scans found, empty when every query uses indexes where it filters or joins
+     * @throws DataException in strict mode, when a query does a full scan
+     */
+    public List<IndexAdvisor.FullScan> bootstrap() {
+        createSchema();
+        if (connection != null) return new IndexAdvisor(strict).check(connection);
+        try (Connection borrowed = dataSource.getConnection()) {
+            return new IndexAdvisor(strict).check(borrowed);
+        } catch (SQLException e) {
+            throw new DataException("Unable to check query plans", e);
+        }
+    }
+
+    public void createSchema() {
+        if (connection != null) {
+            createSchema(connection);
+            return;
+        }
+        try (Connection borrowed = dataSource.getConnection()) {
+            createSchema(borrowed);
+        } catch (SQLException e) {
+            throw new DataException("Unable to create schema", e);
+        }
+    }
+
+    private static void createSchema(Connection connection) {
+        try (Statement statement = connection.createStatement()) {
+            for (String table : TABLES) {
+                statement.execute(table);
+            }
+            for (Index index : INDEXES) {
+                if (!indexedColumns(connection, index.table()).contains(index.column())) {
+                    statement.execute(index.createSql());
+                }
+            }
+        } catch (SQLException e) {
+            throw new DataException("Unable to create schema", e);
+        }
+    }
+
+    // leading columns of the table's indexes, an index on (A, B) serves lookups by A
+    private static Set<String> indexedColumns(Connection connection, String table) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        Set<String> columns = new HashSet<>();
+        for (String name : new String[]{table, table.toLowerCase(Locale.ROOT)}) {
+            try (ResultSet rs = metaData.getIndexInfo(connection.getCatalog(), null, name, false, false)) {
+                while (rs.next()) {
+                    if (rs.getShort("ORDINAL_POSITION") == 1 && rs.getString("COLUMN_NAME") != null) {
+                        columns.add(rs.getString("COLUMN_NAME").toUpperCase(Locale.ROOT));
+                    }
+                }
+            }
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,174 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.exception.DataException;
+import com.jionek.peopledb.model.CrudOperation;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A connection borrowed from a ConnectionSource together with its prepared statement cache.
+ * Confined to one thread; open() calls on that thread nest, and the connection goes back to the
+ * source when the outermost one is closed. Only a stream may be closed on another thread, hence the atomic depth.
+ */
+final class Session implements AutoCloseable {
+    private final ConnectionSource source;
+    private final Connection connection;
+    private final StatementCache statements;
+    private final AtomicInteger depth = new AtomicInteger();
+    private volatile Thread owner;
+    private int transactionDepth;
+    private Map<Class<?>, Map<Long, Object>> identityMap;
+    // non-null while a transaction begun by inTransaction runs
+    private List<Runnable> afterCommit;
+
+    Session(ConnectionSource source, Connection connection, StatementCache statements) {
+        this.source = source;
+        this.connection = connection;
+        this.statements = statements;
+    }
+
+    Connection connection() {
+        return connection;
+    }
+
+    StatementCache statements() {
+        return statements;
+    }
+
+    PreparedStatement prepare(CrudOperation operation, String sql) throws SQLException {
+        return statements.get(operation, sql, connection::prepareStatement);
+    }
+
+    PreparedStatement prepare(CrudOperation operation, String sql, StatementCache.StatementFactory factory) throws SQLException {
+        return statements.get(operation, sql, factory);
+    }
+
+    /**
+     * Runs work in a transaction on this session's connection. When a transaction is already running
+     * (auto-commit off, e.g. managed by the caller of a Connection based repository) work just joins it.
+     */
+    <R> R inTransaction(Supplier<R> work) {
+        if (transactionDepth++ == 0) {
+            identityMap = new HashMap<>();
+        }
+        try {
+            return runInTransaction(work);
+        } finally {
+            if (--transactionDepth == 0) {
+                identityMap = null;
+            }
+        }
+    }
+
+    /**
+     * @return entities already loaded in the current inTransaction block by ID, null outside of one
+     */
+    Map<Long, Object> identityMap(Class<?> entityClass) {
+        return identityMap == null ? null : identityMap.computeIfAbsent(entityClass, type -> new HashMap<>());
+    }
+
+    /**
+     * Runs action once the current work is committed: right away with auto-commit on, after the commit
+     * of the running inTransaction block otherwise. Dropped when that block rolls back, and when the
+     * transaction is managed by the caller of a Connection based repository, whose commit isn't seen here.
+     */
+    void afterCommit(Runnable action) {
+        if (afterCommit != null) {
+            afterCommit.add(action);
+            return;
+        }
+        try {
+            if (connection.getAutoCommit()) action.run();
+        } catch (SQLException e) {
+            throw new DataException("Unable to read auto-commit mode", e);
+        }
+    }
+
+    private <R> R runInTransaction(Supplier<R> work) {
+        boolean outermost;
+        try {
+            outermost = connection.getAutoCommit();
+            if (outermost) connection.setAutoCommit(false);
+        } catch (SQLException e) {
+            throw new DataException("Unable to begin transaction", e);
+        }
+        if (!outermost) return work.get();
+
+        R result;
+        List<Runnable> committed = new ArrayList<>();
+        afterCommit = committed;
+        try {
+            result = work.get();
+            connection.commit();
+        } catch (SQLException e) {
+            rollbackQuietly();
+            throw new DataException("Unable to commit transaction", e);
+        } catch (RuntimeException | Error e) {
+            rollbackQuietly();
+            throw e;
+        } finally {
+            afterCommit = null;
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException ignored) {
+            }
+        }
+        committed.forEach(Runnable::run);
+        return result;
+    }
+
+    Session enter() {
+        depth.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Nested open() on a session that may be closed for good by another thread meanwhile.
+     * @return false when it was, the session may belong to somebody else already
+     */
+    boolean tryEnter() {
+        int open;
+        do {
+            open = depth.get();
+            if (open == 0) return false;
+        } while (!depth.compareAndSet(open, open + 1));
+        return true;
+    }
+
+    boolean isOpen() {
+        return depth.get() > 0;
+    }
+
+    void borrowedBy(Thread thread) {
+        owner = thread;
+    }
+
+    /**
+     * @return the thread that borrowed this session from a ConnectionPool
+     */
+    Thread owner() {
+        return owner;
+    }
+
+    @Override
+    public void close() {
+        if (depth.decrementAndGet() == 0) {
+            source.release(this);
+        }
+    }
+
+    void rollbackQuietly() {
+        try {
+            connection.rollback();
+        } catch (SQLException ignored) {
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.jionek.peopledb.repository;
+
+import java.sql.Connection;
+
+/**
+ * Wraps the caller's Connection, the way repositories always worked: every session is that one connection,
+ * transactions are up to the caller and the connection is never closed here.
+ * Like the Connection itself, it must not be shared between threads.
+ */
+final class SingleConnectionSource implements ConnectionSource {
+    private final Session session;
+
+    SingleConnectionSource(Connection connection, int statementCacheSize) {
+        this.session = new Session(this, connection, new StatementCache(statementCacheSize));
+    }
+
+    @Override
+    public Session open() {
+        return session.enter();
+    }
+
+    @Override
+    public void release(Session session) {
+    }
+
+    @Override
+    public StatementCacheStats statementCacheStats() {
+        return session.statements().stats();
+    }
+
+    @Override
+    public void close() {
+        session.statements().close();
+    }
+}
@@ -0,0 +1,77 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.CrudOperation;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of prepared statements keyed by operation and SQL.
+ * Statements pushed out of the cache, or left in it on close(), get closed.
+ */
+final class StatementCache implements AutoCloseable {
+
+    @FunctionalInterface
+    interface StatementFactory {
+        PreparedStatement prepare(String sql) throws SQLException;
+    }
+
+    private record Key(CrudOperation operation, String sql) { }
+
+    private final int maxSize;
+    private final LinkedHashMap<Key, PreparedStatement> statements;
+    // counters are read by stats() from other threads, the map itself stays with the owning Session
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    StatementCache(int maxSize) {
+        if (maxSize < 1) throw new IllegalArgumentException("Statement cache size must be positive, got: " + maxSize);
+        this.maxSize = maxSize;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+                if (size() <= StatementCache.this.maxSize) return false;
+                evictions.increment();
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    PreparedStatement get(CrudOperation operation, String sql, StatementFactory factory) throws SQLException {
+        Key key = new Key(operation, sql);
+        PreparedStatement ps = statements.get(key);
+        if (ps != null && !ps.isClosed()) {
+            hits.increment();
+            return ps;
+        }
+        misses.increment();
+        ps = factory.prepare(sql);
+        statements.put(key, ps);
+        return ps;
+    }
+
+    StatementCacheStats stats() {
+        return new StatementCacheStats(hits.sum(), misses.sum(), evictions.sum(), statements.size(), maxSize);
+    }
+
+    @Override
+    public void close() {
+        List<PreparedStatement> toClose = new ArrayList<>(statements.values());
+        statements.clear();
+        toClose.forEach(StatementCache::closeQuietly);
+    }
+
+    private static void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException ignored) {
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.jionek.peopledb.repository;
+
+/**
+ * Snapshot of a repository's prepared statement cache counters, use it to size the cache.
+ */
+public record StatementCacheStats(long hits, long misses, long evictions, int size, int maxSize) {
+
+    public double hitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+}
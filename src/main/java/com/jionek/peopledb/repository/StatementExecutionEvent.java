@@ -0,0 +1,32 @@
+package com.jionek.peopledb.repository;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event spanning one repository statement, from preparing it to reading its results.
+ * Enable it in a recording with "com.jionek.peopledb.StatementExecution#enabled=true" (it is on in the default settings).
+ */
+@Name("com.jionek.peopledb.StatementExecution")
+@Label("Statement Execution")
+@Category({"PeopleDB", "Repository"})
+@Description("SQL statement run by a PeopleDB repository")
+@StackTrace(false)
+final class StatementExecutionEvent extends Event {
+    @Label("Repository")
+    String repository;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Rows")
+    @Description("Rows affected or read")
+    long rows;
+
+    @Label("Failed")
+    boolean failed;
+}
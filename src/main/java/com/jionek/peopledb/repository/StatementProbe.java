@@ -0,0 +1,47 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.CrudOperation;
+
+/**
+ * Times one statement for the repository's RepositoryMetrics and as a StatementExecutionEvent.
+ * Open it in a try-with-resources around the work and call completed() with the row count at the end,
+ * closing it without that counts as a failure. With RepositoryMetrics.NONE and no JFR recording
+ * the clock isn't read and the event is a no-op.
+ */
+final class StatementProbe implements AutoCloseable {
+    private final RepositoryMetrics metrics;
+    private final CrudOperation operation;
+    private final Class<?> repositoryClass;
+    private final StatementExecutionEvent event = new StatementExecutionEvent();
+    private final long startNanos;
+    private long rows = -1;
+
+    StatementProbe(RepositoryMetrics metrics, CrudOperation operation, Class<?> repositoryClass) {
+        this.metrics = metrics;
+        this.operation = operation;
+        this.repositoryClass = repositoryClass;
+        this.startNanos = metrics == RepositoryMetrics.NONE ? 0 : System.nanoTime();
+        event.begin();
+    }
+
+    void completed(long rows) {
+        this.rows = rows;
+    }
+
+    @Override
+    public void close() {
+        boolean failed = rows < 0;
+        long rowCount = Math.max(rows, 0);
+        if (metrics != RepositoryMetrics.NONE) {
+            metrics.record(operation, System.nanoTime() - startNanos, rowCount, failed);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.repository = repositoryClass.getSimpleName();
+            event.operation = operation.name();
+            event.rows = rowCount;
+            event.failed = failed;
+            event.commit();
+        }
+    }
+}
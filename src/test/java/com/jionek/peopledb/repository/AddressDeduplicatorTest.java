@@ -0,0 +1,136 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.Address;
+import com.jionek.peopledb.model.Person;
+import com.jionek.peopledb.model.Region;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AddressDeduplicatorTest {
+
+    private H2TestDatabase database;
+    private AddressRepository repo;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = new H2TestDatabase("dedup");
+        repo = new AddressRepository(database.dataSource());
+        repo.enableDeduplication(100);
+    }
+    @AfterEach
+    void tearDown() throws SQLException {
+        repo.close();
+        database.close();
+    }
+
+    @Test
+    public void savesEachContentOnceWithOneLookupPerBatch() {
+        List<Address> addresses = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            addresses.add(address(switch (i % 3) {
+                case 0 -> "123 Beale St.";
+                case 1 -> "  123  BEALE st. ";
+                default -> "1 Market St.";
+            }));
+        }
+
+        repo.saveAll(addresses);
+
+        assertThat(repo.findPage(null, 10).content()).hasSize(2);
+        assertThat(addresses.get(1).id()).isEqualTo(addresses.get(0).id());
+        assertThat(addresses.get(2).id()).isNotEqualTo(addresses.get(0).id());
+        assertThat(repo.deduplicator().lookups()).isEqualTo(1);
+    }
+
+    @Test
+    public void indexedContentsNeedNoQuery() {
+        Address first = repo.save(address("123 Beale St."));
+        long statements = statementExecutions();
+
+        Address second = repo.save(address("123 Beale St."));
+
+        assertThat(second.id()).isEqualTo(first.id());
+        assertThat(statementExecutions()).isEqualTo(statements);
+        assertThat(repo.deduplicator().indexHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void indexIsBounded() {
+        repo.enableDeduplication(2);
+        for (int i = 0; i < 5; i++) {
+            repo.save(address(i + " Market St."));
+        }
+        Address again = repo.save(address("0 Market St."));
+
+        assertThat(repo.deduplicator().indexSize()).isEqualTo(2);
+        assertThat(again.id()).isNotNull();
+        assertThat(repo.findPage(null, 10).content()).hasSize(5);
+    }
+
+    @Test
+    public void rolledBackInsertsAreNotIndexed() {
+        Address rolledBack = address("123 Beale St.");
+        assertThatThrownBy(() -> repo.inTransaction(() -> {
+            repo.save(rolledBack);
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+
+        Address saved = repo.save(address("123 Beale St."));
+
+        assertThat(repo.findById(saved.id())).isPresent();
+        assertThat(repo.findPage(null, 10).content()).hasSize(1);
+    }
+
+    @Test
+    public void updatedContentIsNotReusedForTheOldOne() {
+        Address moved = repo.save(address("123 Beale St."));
+        repo.update(new Address(moved.id(), "1 Market St.", "Apt. 1a", "Wala Wala", "WA", "90210", "Fulton County",
+                Region.WEST, "United States"));
+
+        Address old = repo.save(address("123 Beale St."));
+        Address current = repo.save(address("1 Market St."));
+
+        assertThat(old.id()).isNotEqualTo(moved.id());
+        assertThat(repo.findById(old.id()).get().streetAddress()).isEqualTo("123 Beale St.");
+        assertThat(current.id()).isEqualTo(moved.id());
+        assertThat(repo.findPage(null, 10).content()).hasSize(2);
+    }
+
+    @Test
+    public void peopleShareDeduplicatedAddresses() {
+        try (PeopleRepository people = new PeopleRepository(database.dataSource())) {
+            people.enableAddressDeduplication(100);
+            List<Person> employees = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                Person employee = new Person("John" + i, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+                employee.setBusinessAddress(address("1 Market St."));
+                employees.add(employee);
+            }
+
+            people.saveAll(employees);
+
+            assertThat(repo.findPage(null, 10).content()).hasSize(1);
+            assertThat(people.findById(employees.get(49).getId()).get().getBusinessAddress().get().streetAddress())
+                    .isEqualTo("1 Market St.");
+        }
+    }
+
+    private long statementExecutions() {
+        StatementCacheStats stats = repo.getStatementCacheStats();
+        return stats.hits() + stats.misses();
+    }
+
+    private static Address address(String street) {
+        return new Address(null, street, "Apt. 1a", "Wala Wala", "WA", "90210", "Fulton County", Region.WEST, "United States");
+    }
+}
@@ -0,0 +1,120 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.CrudOperation;
+import com.jionek.peopledb.model.Person;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AsyncRepositoryTest {
+
+    private H2TestDatabase database;
+    private PeopleRepository repo;
+    private HistogramMetrics metrics;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = new H2TestDatabase("async");
+        repo = new PeopleRepository(database.dataSource());
+        metrics = new HistogramMetrics();
+        repo.setMetrics(metrics);
+    }
+    @AfterEach
+    void tearDown() throws SQLException {
+        repo.close();
+        database.close();
+    }
+
+    @Test
+    public void canSaveCountAndDeleteAsync() {
+        try (AsyncRepository<Person> async = new AsyncRepository<>(repo)) {
+            List<CompletableFuture<Person>> saves = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                saves.add(async.saveAsync(person("John" + i)));
+            }
+            List<Person> saved = saves.stream().map(CompletableFuture::join).toList();
+
+            assertThat(saved).allSatisfy(person -> assertThat(person.getId()).isNotNull());
+            assertThat(async.countAsync().join()).isEqualTo(20);
+            async.deleteAsync(saved.get(0)).join();
+            assertThat(async.countAsync().join()).isEqualTo(19);
+            assertThat(async.findAllByIdAsync(List.of(saved.get(1).getId(), saved.get(2).getId())).join())
+                    .containsExactly(saved.get(1), saved.get(2));
+        }
+    }
+
+    @Test
+    public void runsOnNoMoreThreadsThanMaxConcurrency() {
+        try (AsyncRepository<Person> async = new AsyncRepository<>(repo, 2, Duration.ZERO)) {
+            List<CompletableFuture<Person>> saves = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                saves.add(async.saveAsync(person("John" + i)));
+            }
+            // named platform threads only before Java 21, virtual threads are not counted
+            long threads = Thread.getAllStackTraces().keySet().stream()
+                    .filter(thread -> thread.getName().equals("async-repository"))
+                    .count();
+
+            assertThat(threads).isLessThanOrEqualTo(2);
+            saves.forEach(CompletableFuture::join);
+            assertThat(async.countAsync().join()).isEqualTo(500);
+        }
+    }
+
+    @Test
+    public void coalescesFindByIdIntoBatches() {
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            people.add(person("John" + i));
+        }
+        repo.saveAll(people);
+
+        try (AsyncRepository<Person> async = new AsyncRepository<>(repo, 4, Duration.ofMillis(20))) {
+            List<CompletableFuture<Optional<Person>>> lookups = new ArrayList<>();
+            for (Person person : people) {
+                lookups.add(async.findByIdAsync(person.getId()));
+            }
+            CompletableFuture<Optional<Person>> missing = async.findByIdAsync(-1L);
+
+            for (int i = 0; i < people.size(); i++) {
+                assertThat(lookups.get(i).join()).contains(people.get(i));
+            }
+            assertThat(missing.join()).isEmpty();
+        }
+        assertThat(metrics.stats(CrudOperation.FIND_BY_ID).count()).isZero();
+        assertThat(metrics.stats(CrudOperation.FIND_ALL_BY_ID).count()).isLessThan(10);
+    }
+
+    @Test
+    public void failsCoalescedLookupsTogether() throws SQLException {
+        try (AsyncRepository<Person> async = new AsyncRepository<>(repo)) {
+            try (Connection connection = database.dataSource().getConnection(); Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE PEOPLE");
+            }
+            CompletableFuture<Optional<Person>> first = async.findByIdAsync(1L);
+            CompletableFuture<Optional<Person>> second = async.findByIdAsync(2L);
+
+            assertThatThrownBy(first::join).isInstanceOf(CompletionException.class);
+            assertThatThrownBy(second::join).isInstanceOf(CompletionException.class);
+        }
+    }
+
+    private static Person person(String firstName) {
+        return new Person(firstName, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0")));
+    }
+}
@@ -0,0 +1,133 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.CrudOperation;
+import com.jionek.peopledb.model.Person;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DirtyTrackerTest {
+
+    private H2TestDatabase database;
+    private PeopleRepository repo;
+    private HistogramMetrics metrics;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = new H2TestDatabase("dirty");
+        repo = new PeopleRepository(database.dataSource());
+        metrics = new HistogramMetrics();
+        repo.setMetrics(metrics);
+    }
+    @AfterEach
+    void tearDown() throws SQLException {
+        repo.close();
+        database.close();
+    }
+
+    @Test
+    public void skipsUpdateOfUnchangedEntity() {
+        Person john = repo.save(person("John"));
+        Person found = repo.findById(john.getId()).get();
+
+        repo.update(john);
+        repo.update(found);
+        found.setSalary(new BigDecimal("73000.0"));     // same salary, different scale
+        repo.update(found);
+
+        assertThat(metrics.stats(CrudOperation.UPDATE).count()).isZero();
+    }
+
+    @Test
+    public void retriesUpdateRolledBack() {
+        Person found = repo.findById(repo.save(person("John")).getId()).get();
+
+        assertThatThrownBy(() -> repo.inTransaction(() -> {
+            found.setSalary(new BigDecimal("80000.00"));
+            repo.update(found);
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+        assertThat(repo.findById(found.getId()).get().getSalary()).isEqualByComparingTo("73000");
+
+        repo.update(found);
+
+        assertThat(repo.findById(found.getId()).get().getSalary()).isEqualByComparingTo("80000");
+    }
+
+    @Test
+    public void updatesOnlyChangedColumns() throws SQLException {
+        Person found = repo.findById(repo.save(person("John")).getId()).get();
+        execute("UPDATE PEOPLE SET FIRST_NAME='Renamed' WHERE ID=" + found.getId());
+
+        found.setSalary(new BigDecimal("80000.00"));
+        repo.update(found);
+        repo.update(found);
+
+        Person reloaded;
+        try (PeopleRepository other = new PeopleRepository(database.dataSource())) {
+            reloaded = other.findById(found.getId()).get();
+        }
+        assertThat(reloaded.getFirstName()).isEqualTo("Renamed");
+        assertThat(reloaded.getSalary()).isEqualByComparingTo("80000");
+        assertThat(metrics.stats(CrudOperation.UPDATE).count()).isEqualTo(1);
+    }
+
+    @Test
+    public void updatesUntrackedEntityInFull() throws SQLException {
+        Person john = repo.save(person("John"));
+        execute("UPDATE PEOPLE SET FIRST_NAME='Renamed' WHERE ID=" + john.getId());
+        Person detached = new Person(john.getId(), "John", "Smith", john.getDob(), new BigDecimal("90000.00"));
+
+        repo.update(detached);
+
+        assertThat(repo.findById(john.getId()).get().getFirstName()).isEqualTo("John");
+    }
+
+    @Test
+    public void batchesUpdatesByChangedColumns() {
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            people.add(person("John" + i));
+        }
+        repo.saveAll(people);
+        for (int i = 0; i < 5; i++) {
+            people.get(i).setSalary(new BigDecimal("1000.00").add(BigDecimal.valueOf(i)));
+        }
+        for (int i = 5; i < 8; i++) {
+            people.get(i).setFirstName("Jim" + i);
+        }
+
+        int updated = repo.updateAll(people);
+
+        assertThat(updated).isEqualTo(8);
+        assertThat(metrics.stats(CrudOperation.UPDATE).count()).isEqualTo(2);
+        assertThat(repo.findById(people.get(6).getId()).get().getFirstName()).isEqualTo("Jim6");
+        assertThat(repo.findById(people.get(3).getId()).get().getSalary()).isEqualByComparingTo("1003");
+        assertThat(repo.updateAll(people)).isZero();
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection connection = database.dataSource().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static Person person(String firstName) {
+        Person person = new Person(firstName, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0")));
+        person.setSalary(new BigDecimal("73000.00"));
+        return person;
+    }
+}
@@ -0,0 +1,52 @@
+package com.jionek.peopledb.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EntityCacheTest {
+
+    private long now;
+    private final EntityCache<String> cache = new EntityCache<>(2, Duration.ofSeconds(10), () -> now);
+
+    @Test
+    public void evictsLeastRecentlyUsed(){
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        cache.get(1L);
+        cache.put(3L, "three");
+
+        assertThat(cache.get(1L)).isEqualTo("one");
+        assertThat(cache.get(2L)).isNull();
+        assertThat(cache.get(3L)).isEqualTo("three");
+        assertThat(cache.stats().evictions()).isEqualTo(1);
+    }
+
+    @Test
+    public void expiresEntriesAfterTtl(){
+        cache.put(1L, "one");
+        now += Duration.ofSeconds(9).toNanos();
+        assertThat(cache.get(1L)).isEqualTo("one");
+
+        now += Duration.ofSeconds(1).toNanos();
+        assertThat(cache.get(1L)).isNull();
+        assertThat(cache.stats().expirations()).isEqualTo(1);
+    }
+
+    @Test
+    public void countsHitRatio(){
+        cache.put(1L, "one");
+        cache.get(1L);
+        cache.get(1L);
+        cache.get(1L);
+        cache.get(2L);
+        cache.invalidate(1L);
+
+        EntityCacheStats stats = cache.stats();
+        assertThat(stats.hitRatio()).isEqualTo(0.75);
+        assertThat(stats.invalidations()).isEqualTo(1);
+        assertThat(stats.size()).isZero();
+    }
+}
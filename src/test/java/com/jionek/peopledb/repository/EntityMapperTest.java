@@ -0,0 +1,88 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.Address;
+import com.jionek.peopledb.model.CrudOperation;
+import com.jionek.peopledb.model.Person;
+import com.jionek.peopledb.model.Region;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EntityMapperTest {
+
+    private H2TestDatabase database;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = new H2TestDatabase("mappers");
+    }
+    @AfterEach
+    void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Test
+    public void metadataComesFromGeneratedCode() {
+        RepositoryMetadata metadata = RepositoryMetadata.of(AddressRepository.class);
+
+        assertThat(metadata.mapper()).isSameAs(AddressEntityMapper.INSTANCE);
+        assertThat(RepositoryMetadata.of(PeopleRepository.class).mapper()).isSameAs(PersonEntityMapper.INSTANCE);
+        assertThat(GeneratedRepositoryMetadata.sql(PeopleRepository.class))
+                .containsEntry(CrudOperation.SAVE, PeopleRepository.SAVE_PERSON_SQL);
+        assertThat(PersonEntityMapper.INSTANCE.insertSql())
+                .isEqualTo("INSERT INTO PEOPLE (FIRST_NAME, LAST_NAME, DOB, SALARY, EMAIL) VALUES(?, ?, ?, ?, ?)");
+    }
+
+    @Test
+    public void roundTripsPersonColumns() throws SQLException {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        john.setSalary(new BigDecimal("73000.00"));
+        john.setEmail("john@smith.com");
+        try (Connection connection = database.dataSource().getConnection()) {
+            try (PreparedStatement ps = connection.prepareStatement(PersonEntityMapper.INSTANCE.insertSql())) {
+                assertThat(PersonEntityMapper.INSTANCE.bindColumns(john, ps, 1)).isEqualTo(6);
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = connection.prepareStatement("SELECT ID AS P_ID, LAST_NAME AS P_LAST_NAME, DOB AS P_DOB, "
+                    + "SALARY AS P_SALARY, EMAIL AS P_EMAIL FROM PEOPLE");
+                 ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                int[] columns = PersonEntityMapper.INSTANCE.columnIndexes(Map.of("P_ID", 1, "P_LAST_NAME", 2, "P_DOB", 3,
+                        "P_SALARY", 4, "P_EMAIL", 5), "P_");
+                Person found = PersonEntityMapper.INSTANCE.read(rs, columns);
+
+                assertThat(found.getId()).isNotNull();
+                assertThat(found.getFirstName()).isNull();
+                assertThat(found.getLastName()).isEqualTo("Smith");
+                assertThat(found.getDob()).isEqualTo(john.getDob().withZoneSameInstant(ZoneId.of("+0")));
+                assertThat(found.getSalary()).isEqualTo(john.getSalary());
+                assertThat(found.getEmail()).isEqualTo("john@smith.com");
+            }
+        }
+    }
+
+    @Test
+    public void canUpdateAddress() {
+        try (AddressRepository repo = new AddressRepository(database.dataSource())) {
+            Address saved = repo.save(new Address(null, "123 Beale St.", "Apt. 1a", "Wala Wala", "WA", "90210",
+                    "Fulton County", Region.WEST, "United States"));
+            Address moved = new Address(saved.id(), "1 Market St.", null, "San Francisco", "CA", "94105",
+                    "San Francisco County", Region.WEST, "United States");
+
+            repo.update(moved);
+
+            assertThat(repo.findById(saved.id())).contains(moved);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.jionek.peopledb.repository;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * In-memory H2 database in MySQL mode with the PEOPLE and ADDRESSES tables of SchemaBootstrap, dropped on close.
+ */
+class H2TestDatabase implements AutoCloseable {
+    private final JdbcDataSource dataSource = new JdbcDataSource();
+    private final Connection keepAlive;
+
+    H2TestDatabase(String name) throws SQLException {
+        dataSource.setURL("jdbc:h2:mem:" + name + ";MODE=MySQL");
+        keepAlive = dataSource.getConnection();
+        new SchemaBootstrap(keepAlive).createSchema();
+    }
+
+    JdbcDataSource dataSource() {
+        return dataSource;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        keepAlive.close();
+    }
+}
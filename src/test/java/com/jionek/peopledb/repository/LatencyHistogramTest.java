@@ -0,0 +1,62 @@
+package com.jionek.peopledb.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsKeepValuesWithinPrecision() {
+        for (long value : new long[]{0, 1, 63, 64, 65, 1_000, 123_456, 1_000_000_007L, Long.MAX_VALUE}) {
+            long highest = LatencyHistogram.highestEquivalent(LatencyHistogram.bucketOf(value));
+            assertThat(highest).isGreaterThanOrEqualTo(value);
+            assertThat((double) highest - value).isLessThanOrEqualTo(value / 32.0);
+        }
+    }
+
+    @Test
+    public void reportsPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros * 1000);
+        }
+
+        assertThat(histogram.count()).isEqualTo(1000);
+        assertThat(histogram.max()).isEqualTo(1_000_000);
+        assertThat(histogram.mean()).isCloseTo(500_500, within(1.0));
+        assertThat((double) histogram.percentile(50)).isCloseTo(500_000, within(500_000 / 32.0));
+        assertThat((double) histogram.percentile(99)).isCloseTo(990_000, within(990_000 / 32.0));
+        assertThat(histogram.percentile(100)).isEqualTo(1_000_000);
+    }
+
+    @Test
+    public void recordsFromManyThreads() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 1; i <= 100_000; i++) {
+                        histogram.record(i);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(histogram.count()).isEqualTo(800_000);
+        assertThat(histogram.max()).isEqualTo(100_000);
+    }
+}
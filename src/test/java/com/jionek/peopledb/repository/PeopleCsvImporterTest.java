@@ -0,0 +1,123 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.exception.DataException;
+import com.jionek.peopledb.model.Person;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PeopleCsvImporterTest {
+    private static final int ROWS = 2_345;
+
+    @TempDir
+    Path dir;
+    private H2TestDatabase database;
+    private PeopleRepository repo;
+    private Path csv;
+    private Path checkpoint;
+
+    @BeforeEach
+    void setUp() throws SQLException, IOException {
+        database = new H2TestDatabase("importer");
+        repo = new PeopleRepository(database.dataSource());
+        csv = dir.resolve("hr.csv");
+        checkpoint = dir.resolve("hr.checkpoint");
+        writeHrExtract(csv, ROWS);
+    }
+    @AfterEach
+    void tearDown() throws SQLException {
+        repo.close();
+        database.close();
+    }
+
+    @Test
+    public void importsAllRows() {
+        List<ImportProgress> reports = new ArrayList<>();
+        ImportProgress progress = new PeopleCsvImporter(repo, PeopleCsvImporter.HR_EXTRACT, 3, 2, 100)
+                .importFile(csv, checkpoint, reports::add, Duration.ofMinutes(1));
+
+        assertThat(progress.rows()).isEqualTo(ROWS);
+        assertThat(progress.isDone()).isTrue();
+        assertThat(reports).last().isEqualTo(progress);
+        assertThat(repo.count()).isEqualTo(ROWS);
+        Person first;
+        try (Stream<Person> people = repo.streamAll()) {
+            first = people.filter(person -> person.getFirstName().equals("First0")).findFirst().get();
+        }
+        assertThat(first.getLastName()).isEqualTo("Last0");
+        assertThat(first.getDob().getHour()).isEqualTo(14);
+        assertThat(first.getSalary()).isEqualByComparingTo("50000.50");
+    }
+
+    @Test
+    public void resumesFailedImportWithoutDuplicates() {
+        Function<String, Person> failingParser = line -> {
+            if (line.contains("First1500,")) throw new IllegalArgumentException("bad row");
+            return PeopleCsvImporter.HR_EXTRACT.apply(line);
+        };
+        assertThatThrownBy(() -> new PeopleCsvImporter(repo, failingParser, 2, 3, 100).importFile(csv, checkpoint))
+                .isInstanceOf(DataException.class)
+                .hasRootCauseMessage("bad row");
+        long imported = repo.count();
+        assertThat(imported).isLessThan(ROWS);
+
+        ImportProgress resumed = new PeopleCsvImporter(repo, PeopleCsvImporter.HR_EXTRACT, 2, 3, 100).importFile(csv, checkpoint);
+
+        assertThat(resumed.rows()).isEqualTo(ROWS - imported);
+        assertThat(resumed.isDone()).isTrue();
+        Set<String> firstNames;
+        try (Stream<Person> people = repo.streamAll()) {
+            firstNames = people.map(Person::getFirstName).collect(Collectors.toSet());
+        }
+        assertThat(firstNames).hasSize(ROWS);
+        assertThat(repo.count()).isEqualTo(ROWS);
+    }
+
+    @Test
+    public void resumeNeedsSameChunkSize() {
+        new PeopleCsvImporter(repo, PeopleCsvImporter.HR_EXTRACT, 1, 1, 100).importFile(csv, checkpoint);
+
+        assertThatThrownBy(() -> new PeopleCsvImporter(repo, PeopleCsvImporter.HR_EXTRACT, 1, 1, 50).importFile(csv, checkpoint))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    private static void writeHrExtract(Path file, int rows) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            writer.write(String.join(",", columns("Header")) + "\n");
+            for (int i = 0; i < rows; i++) {
+                String[] row = columns("x" + i);
+                row[2] = "First" + i;
+                row[4] = "Last" + i;
+                row[6] = "first" + i + "@example.com";
+                row[10] = "3/4/1985";
+                row[11] = "02:15:00 PM";
+                row[25] = "50000.50";
+                writer.write(String.join(",", row) + (i % 2 == 0 ? "\n" : "\r\n"));
+            }
+        }
+    }
+
+    private static String[] columns(String filler) {
+        String[] row = new String[30];
+        Arrays.fill(row, filler);
+        return row;
+    }
+}
@@ -0,0 +1,138 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.Address;
+import com.jionek.peopledb.model.Person;
+import com.jionek.peopledb.model.Region;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PeopleRepositoryConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int SAVES_PER_THREAD = 200;
+
+    private H2TestDatabase database;
+    private JdbcDataSource dataSource;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = new H2TestDatabase("concurrency");
+        dataSource = database.dataSource();
+    }
+    @AfterEach
+    void tearDown() throws SQLException {
+        database.close();
+    }
+
+    @Test
+    public void canSaveAndFindFromManyThreads() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(dataSource, 4);
+             PeopleRepository repo = new PeopleRepository(pool)) {
+
+            runWorkers(repo, 1);
+            runWorkers(repo, THREADS);
+
+            assertThat(repo.count()).isEqualTo((long) SAVES_PER_THREAD * (THREADS + 1));
+            assertThat(pool.getOpenConnections()).isLessThanOrEqualTo(4);
+            assertThat(repo.getStatementCacheStats().hits()).isGreaterThan(0);
+        }
+    }
+
+    @Test
+    public void nestedSavesShareOneConnection() {
+        try (ConnectionPool pool = new ConnectionPool(dataSource, 1);
+             PeopleRepository repo = new PeopleRepository(pool)) {
+            Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+            john.setHomeAddress(new Address(null, "123 Beale St.", "Apt. 1a", "Wala Wala", "WA", "90210", "Fulton County", Region.WEST, "United States"));
+            john.setSpouse(new Person("Joan", "Smith", ZonedDateTime.of(1981, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+            john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(2010, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+
+            repo.save(john);
+
+            Person found = repo.findById(john.getId()).get();
+            assertThat(found.getSpouse().get().getFirstName()).isEqualTo("Joan");
+            assertThat(found.getHomeAddress().get().city()).isEqualTo("Wala Wala");
+            assertThat(found.getChildren()).extracting(Person::getFirstName).containsExactly("Johnny");
+            assertThat(pool.getOpenConnections()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void streamClosedOnAnotherThreadReleasesOnlyItsOwnSession() throws Exception {
+        try (ConnectionPool pool = new ConnectionPool(dataSource, 2);
+             PeopleRepository repo = new PeopleRepository(pool)) {
+            repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0"))));
+            Stream<Person> people = repo.streamAll();
+            assertThat(people.iterator().hasNext()).isTrue();
+
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                executor.submit(() -> assertThatThrownBy(() -> repo.inTransaction(() -> {
+                    people.close();
+                    // still in this thread's transaction, so rolled back with it
+                    repo.save(new Person("Jane", "Smith", ZonedDateTime.of(1981, 11, 15, 15, 15, 0, 0, ZoneId.of("+0"))));
+                    throw new IllegalStateException("boom");
+                })).isInstanceOf(IllegalStateException.class)).get();
+            } finally {
+                executor.shutdown();
+            }
+
+            assertThat(pool.getIdleConnections()).isEqualTo(2);
+            // the released session is not this thread's anymore
+            repo.inTransaction(() -> {
+                assertThat(repo.count()).isEqualTo(1);
+                assertThat(pool.getIdleConnections()).isEqualTo(1);
+            });
+        }
+    }
+
+    @Test
+    public void rollsBackFailedTransaction() {
+        try (PeopleRepository repo = new PeopleRepository(dataSource)) {
+            long startCount = repo.count();
+
+            assertThatThrownBy(() -> repo.inTransaction(() -> {
+                repo.save(new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+                throw new IllegalStateException("boom");
+            })).isInstanceOf(IllegalStateException.class);
+
+            assertThat(repo.count()).isEqualTo(startCount);
+        }
+    }
+
+    private void runWorkers(PeopleRepository repo, int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < SAVES_PER_THREAD; i++) {
+                        Person saved = repo.save(new Person("John" + thread, "Smith" + i,
+                                ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0"))));
+                        assertThat(repo.findById(saved.getId())).contains(saved);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
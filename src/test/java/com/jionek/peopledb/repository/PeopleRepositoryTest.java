@@ -1,6 +1,8 @@
 package com.jionek.peopledb.repository;
 
 import com.jionek.peopledb.model.Address;
+import com.jionek.peopledb.model.Fetch;
+import com.jionek.peopledb.model.Page;
 import com.jionek.peopledb.model.Person;
 import com.jionek.peopledb.model.Region;
 import org.junit.jupiter.api.AfterEach;
@@ -16,8 +18,11 @@ import java.sql.*;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toSet;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -36,11 +41,15 @@ public class PeopleRepositoryTest {
             throw new RuntimeException(e);
         }
         connection = DriverManager.getConnection("jdbc:mysql://localhost:3307/crudapi", "root", "123456");
+        new SchemaBootstrap(connection).createSchema();
         connection.setAutoCommit(false);
         repo = new PeopleRepository(connection);
     }
     @AfterEach
     void tearDown() throws SQLException {
+        if (repo != null) {
+            repo.close();
+        }
         if (connection != null) {
             connection.close();
         }
@@ -66,6 +75,21 @@ public class PeopleRepositoryTest {
        Person savedPerson2 = repo.save(bobby);
        assertThat(savedPerson1.getId()).isNotEqualTo(savedPerson2.getId());
    }
+    @Test
+    public void canSaveAllPeopleInBatches(){
+        long startCount = repo.count();
+        List<Person> people = IntStream.rangeClosed(1, 25)
+                .mapToObj(i -> new Person("John" + i, "Smith", ZonedDateTime.of(1980, 11, 15 , 15,15,0,0, ZoneId.of("-6"))))
+                .toList();
+        Person father = people.get(0);
+        father.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(2010, 11, 15 , 15,15,0,0, ZoneId.of("-6"))));
+
+        List<Person> savedPeople = repo.saveAll(people, 10);
+
+        assertThat(savedPeople).extracting(Person::getId).doesNotContainNull().doesNotHaveDuplicates();
+        assertThat(father.getChildren()).extracting(Person::getId).doesNotContainNull();
+        assertThat(repo.count()).isEqualTo(startCount + 26);
+    }
 
     @Test
     public void canSavePersonWithHomeAddress() throws SQLException {
@@ -161,6 +185,113 @@ public class PeopleRepositoryTest {
         assertThat(foundPerson.getChildren().stream().map(Person::getFirstName).collect(toSet())).contains("Johnny", "Sarah", "Jenny");
     }
 
+    @Test
+    public void canFindPersonByIdWithFetchProfile(){
+        Person john = new Person("JohnZZZZZ", "Smith", ZonedDateTime.of(1980, 11, 15 , 15,15,0,0, ZoneId.of("-6")));
+        john.setSpouse(new Person("JoannZZZZZ", "Smith", ZonedDateTime.of(1980, 11, 15 , 15,15,0,0, ZoneId.of("-6"))));
+        john.setHomeAddress(new Address(null, "123 Beale St.", "Apt. 1a", "Wala Wala", "WA", "90210", "Fulton County", Region.WEST, "United States"));
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(2010, 11, 15 , 15,15,0,0, ZoneId.of("-6"))));
+        john.addChild(new Person("Sarah", "Smith", ZonedDateTime.of(2012, 11, 15 , 15,15,0,0, ZoneId.of("-6"))));
+        repo.save(john);
+
+        Person core = repo.findById(john.getId(), new Fetch[0]).get();
+        Person withAddressesAndChildren = repo.findById(john.getId(), Fetch.ADDRESSES, Fetch.CHILDREN).get();
+        Person withSpouse = repo.findById(john.getId(), Fetch.SPOUSE).get();
+
+        assertThat(core).isEqualTo(john);
+        assertThat(core.getSpouse()).isEmpty();
+        assertThat(core.getChildren()).isEmpty();
+        assertThat(withAddressesAndChildren.getHomeAddress().get().state()).isEqualTo("WA");
+        assertThat(withAddressesAndChildren.getChildren()).extracting(Person::getFirstName).containsExactlyInAnyOrder("Johnny", "Sarah");
+        assertThat(withAddressesAndChildren.getSpouse()).isEmpty();
+        assertThat(withSpouse.getSpouse().get().getFirstName()).isEqualTo("JoannZZZZZ");
+        assertThat(withSpouse.getHomeAddress()).isEmpty();
+        assertThat(PersonFetchSql.findById(Fetch.CHILDREN, Fetch.ADDRESSES)).isSameAs(PersonFetchSql.findById(Fetch.ADDRESSES, Fetch.CHILDREN));
+        assertThat(PersonFetchSql.findById(Fetch.SPOUSE)).doesNotContain("CHILD", "JOIN ADDRESSES");
+    }
+
+    @Test
+    public void canFindAllWithFetchProfile(){
+        Person john = new Person("JohnZZZZZ", "Smith", ZonedDateTime.of(1980, 11, 15 , 15,15,0,0, ZoneId.of("-6")));
+        for (int i = 0; i < 120; i++) {
+            john.addChild(new Person("Child" + i, "Smith", ZonedDateTime.of(2010, 11, 15 , 15,15,0,0, ZoneId.of("-6"))));
+        }
+        repo.save(john);
+
+        List<Person> people = repo.findAll(Fetch.CHILDREN);
+
+        // LIMIT counts people, not the joined child rows
+        assertThat(people).hasSize((int) Math.min(100, repo.count()));
+        assertThat(people).doesNotHaveDuplicates();
+        people.stream().filter(john::equals).findFirst()
+                .ifPresent(found -> assertThat(found.getChildren()).hasSize(120));
+    }
+
+    @Test
+    public void reusesPreparedStatements(){
+        Person savedPerson = repo.save(new Person("John1", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        repo.findById(savedPerson.getId());
+        long hitsBefore = repo.getStatementCacheStats().hits();
+
+        repo.findById(savedPerson.getId());
+        repo.findById(savedPerson.getId());
+
+        assertThat(repo.getStatementCacheStats().hits()).isEqualTo(hitsBefore + 2);
+    }
+
+    @Test
+    public void canCacheFindById(){
+        repo.enableEntityCache(100, Duration.ofMinutes(5));
+        Person savedPerson = repo.save(new Person("John1", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+
+        Person p1 = repo.findById(savedPerson.getId()).get();
+        Person p2 = repo.findById(savedPerson.getId()).get();
+        assertThat(p2).isSameAs(p1);
+
+        p1.setSalary(new BigDecimal("73000.34"));
+        repo.update(p1);
+        assertThat(repo.findById(savedPerson.getId()).get()).isNotSameAs(p1);
+        assertThat(repo.getEntityCacheStats().get().hits()).isEqualTo(1);
+        assertThat(repo.getEntityCacheStats().get().invalidations()).isEqualTo(1);
+    }
+
+    @Test
+    public void findByIdReturnsSameInstanceWithinTransaction(){
+        Person savedPerson = repo.save(new Person("John1", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+
+        repo.inTransaction(() -> {
+            Person p1 = repo.findById(savedPerson.getId()).get();
+            assertThat(repo.findById(savedPerson.getId()).get()).isSameAs(p1);
+        });
+        assertThat(repo.findById(savedPerson.getId()).get()).isNotSameAs(repo.findById(savedPerson.getId()).get());
+    }
+
+    @Test
+    public void canFindAllById(){
+        Person john = new Person("JohnZZZZZ", "Smith", ZonedDateTime.of(1980, 11, 15 , 15,15,0,0, ZoneId.of("-6")));
+        john.addChild(new Person("Johnny", "Smith", ZonedDateTime.of(2010, 11, 15 , 15,15,0,0, ZoneId.of("-6"))));
+        john.addChild(new Person("Sarah", "Smith", ZonedDateTime.of(2012, 11, 15 , 15,15,0,0, ZoneId.of("-6"))));
+        john.setHomeAddress(new Address(null, "123 Beale St.", "Apt. 1a", "Wala Wala", "WA", "90210", "Fulton County", Region.WEST, "United States"));
+        Person joan = new Person("JoannZZZZZ", "Smith", ZonedDateTime.of(1980, 11, 15 , 15,15,0,0, ZoneId.of("-6")));
+        joan.setSpouse(new Person("Bobby", "Horse", ZonedDateTime.of(1985, 11, 25 , 15,15,12,0, ZoneId.of("-8"))));
+        List<Person> others = IntStream.rangeClosed(1, 20)
+                .mapToObj(i -> new Person("John" + i, "Smith", ZonedDateTime.of(1980, 11, 15 , 15,15,0,0, ZoneId.of("-6"))))
+                .toList();
+        repo.save(john);
+        repo.save(joan);
+        repo.saveAll(others);
+
+        List<Long> ids = new ArrayList<>(List.of(joan.getId(), -1L, john.getId(), joan.getId()));
+        others.forEach(person -> ids.add(person.getId()));
+        List<Person> found = repo.findAllById(ids);
+
+        assertThat(found).hasSize(22);
+        assertThat(found.get(0).getSpouse().get().getFirstName()).isEqualTo("Bobby");
+        assertThat(found.get(1).getChildren()).extracting(Person::getFirstName).containsExactlyInAnyOrder("Johnny", "Sarah");
+        assertThat(found.get(1).getHomeAddress().get().state()).isEqualTo("WA");
+        assertThat(found.subList(2, 22)).containsExactlyElementsOf(others);
+    }
+
     @Test
     public void testPersonIdNotFound(){
         Optional<Person> foundId = repo.findById(-1L);
@@ -186,6 +317,41 @@ public class PeopleRepositoryTest {
 
         }
 
+    @Test
+    public void canStreamAllPeople(){
+        List<Person> people = IntStream.rangeClosed(1, 120)
+                .mapToObj(i -> new Person("John" + i, "Smith", ZonedDateTime.of(1980, 11, 15 , 15,15,0,0, ZoneId.of("-6"))))
+                .toList();
+        repo.saveAll(people);
+        long count = repo.count();
+
+        try (Stream<Person> stream = repo.streamAll()) {
+            assertThat(stream.count()).isEqualTo(count).isGreaterThan(100);
+        }
+        try (Stream<Person> stream = repo.streamAll(10)) {
+            assertThat(stream.map(Person::getId)).contains(people.get(119).getId());
+        }
+    }
+
+    @Test
+    public void canReadAllPagesAfterId(){
+        Person first = repo.save(new Person("John0", "Smith", ZonedDateTime.of(1980, 11, 15 , 15,15,0,0, ZoneId.of("-6"))));
+        List<Person> people = IntStream.rangeClosed(1, 25)
+                .mapToObj(i -> new Person("John" + i, "Smith", ZonedDateTime.of(1980, 11, 15 , 15,15,0,0, ZoneId.of("-6"))))
+                .toList();
+        repo.saveAll(people);
+
+        List<Long> foundIds = new ArrayList<>();
+        Page<Person> page = repo.findPage(first.getId(), 10);
+        foundIds.addAll(page.content().stream().map(Person::getId).toList());
+        while (page.hasNext()) {
+            page = repo.findPage(page.nextCursor(), 10);
+            foundIds.addAll(page.content().stream().map(Person::getId).toList());
+        }
+
+        assertThat(foundIds).containsExactlyElementsOf(people.stream().map(Person::getId).toList());
+    }
+
     @Test
     public void canGetCount(){
         long startCount = repo.count();
@@ -215,6 +381,24 @@ public class PeopleRepositoryTest {
         assertThat(endCount).isEqualTo(startCount - 2);
     }
 
+    @Test
+    public void canDeleteManyPeopleInChunks(){
+        List<Person> people = IntStream.rangeClosed(1, 2500)
+                .mapToObj(i -> new Person("John" + i, "Smith", ZonedDateTime.of(1980, 11, 15 , 15,15,0,0, ZoneId.of("-6"))))
+                .toList();
+        repo.saveAll(people);
+        long startCount = repo.count();
+        long startMisses = repo.getStatementCacheStats().misses();
+
+        int deleted = repo.delete(people.toArray(Person[]::new));
+        repo.delete(people.get(0), people.get(1));
+
+        assertThat(deleted).isEqualTo(2500);
+        assertThat(repo.count()).isEqualTo(startCount - 2500);
+        // 1024 + 1024 + 452 padded to 1024 share one statement, the last call needs the 16 bucket
+        assertThat(repo.getStatementCacheStats().misses() - startMisses).isEqualTo(2);
+    }
+
     @Test
     public void canUpdate(){
         Person savedPerson = repo.save(new Person("John1", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
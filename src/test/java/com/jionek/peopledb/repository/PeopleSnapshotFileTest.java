@@ -0,0 +1,123 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.exception.DataException;
+import com.jionek.peopledb.model.Address;
+import com.jionek.peopledb.model.Fetch;
+import com.jionek.peopledb.model.Person;
+import com.jionek.peopledb.model.Region;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PeopleSnapshotFileTest {
+
+    @TempDir
+    Path dir;
+    private H2TestDatabase database;
+    private PeopleRepository repo;
+    private List<Person> people;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = new H2TestDatabase("snapshotfile");
+        repo = new PeopleRepository(database.dataSource());
+        Address office = new Address(null, "1 Market St.", null, "San Francisco", "CA", "94105", "San Francisco",
+                Region.WEST, "United States");
+        people = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Person person = new Person("J\u00f6hn" + i, i % 2 == 0 ? "Smith" : "Jones",
+                    ZonedDateTime.of(1960 + i % 40, 6, 15, 12, 30, 15, 0, ZoneId.of("-6")));
+            if (i % 10 != 0) person.setSalary(new BigDecimal(i).add(new BigDecimal("0.25")));
+            if (i % 3 == 0) person.setEmail("john" + i + "@example.com");
+            if (i % 4 != 0) {
+                person.setHomeAddress(new Address(null, i + " Beale St.", "Apt. 1a", "Wala Wala", "WA", "90210", "Fulton County",
+                        i % 3 == 0 ? Region.WEST : null, "United States"));
+            }
+            if (i % 5 == 0) person.setBusinessAddress(office);
+            people.add(person);
+        }
+        repo.saveAll(people);
+    }
+    @AfterEach
+    void tearDown() throws SQLException {
+        repo.close();
+        database.close();
+    }
+
+    @Test
+    public void mappedPeopleMatchTheDatabase() {
+        Path file = dir.resolve("people.snapshot");
+        long highWaterMark = repo.writeSnapshotFile(file);
+
+        PeopleSnapshotFile snapshot = PeopleSnapshotFile.map(file);
+
+        assertThat(snapshot.size()).isEqualTo(200);
+        assertThat(snapshot.highWaterMark()).isEqualTo(highWaterMark).isEqualTo(people.get(199).getId());
+        for (Person saved : people) {
+            Person expected = repo.findById(saved.getId(), Fetch.ADDRESSES).get();
+            Person mapped = snapshot.findById(saved.getId()).get();
+            assertThat(mapped).isEqualTo(expected);
+            assertThat(mapped.getSalary()).isEqualTo(expected.getSalary());
+            assertThat(mapped.getEmail()).isEqualTo(expected.getEmail());
+            assertThat(mapped.getHomeAddress()).isEqualTo(expected.getHomeAddress());
+            assertThat(mapped.getBusinessAddress()).isEqualTo(expected.getBusinessAddress());
+        }
+        assertThat(snapshot.findById(highWaterMark + 1)).isEmpty();
+        assertThat(snapshot.contains(people.get(0).getId() - 1)).isFalse();
+    }
+
+    @Test
+    public void keepsEmails() {
+        Path file = dir.resolve("people.snapshot");
+        repo.writeSnapshotFile(file);
+
+        PeopleSnapshotFile snapshot = PeopleSnapshotFile.map(file);
+
+        assertThat(snapshot.findById(people.get(3).getId()).get().getEmail()).isEqualTo("john3@example.com");
+        for (Person saved : people) {
+            assertThat(snapshot.findById(saved.getId()).get().getEmail()).isEqualTo(saved.getEmail());
+        }
+    }
+
+    @Test
+    public void streamsOnlyPeopleSavedAfterTheSnapshot() {
+        Path file = dir.resolve("people.snapshot");
+        repo.writeSnapshotFile(file);
+        Person newcomer = repo.save(new Person("Jane", "Doe", ZonedDateTime.of(1990, 1, 1, 0, 0, 0, 0, ZoneId.of("+0"))));
+
+        PeopleSnapshotFile snapshot = PeopleSnapshotFile.map(file);
+        try (Stream<Person> saved = repo.streamSavedAfter(snapshot)) {
+            assertThat(saved).containsExactly(newcomer);
+        }
+        assertThat(snapshot.contains(newcomer.getId())).isFalse();
+    }
+
+    @Test
+    public void rejectsFilesThatAreNotCompleteSnapshots() throws IOException {
+        Path file = dir.resolve("people.snapshot");
+        repo.writeSnapshotFile(file);
+        byte[] bytes = Files.readAllBytes(file);
+        Path truncated = Files.write(dir.resolve("truncated.snapshot"), Arrays.copyOf(bytes, bytes.length - 1));
+        Path other = Files.writeString(dir.resolve("other.snapshot"), "ID,FIRST_NAME,LAST_NAME");
+
+        assertThatThrownBy(() -> PeopleSnapshotFile.map(truncated)).isInstanceOf(DataException.class).hasMessageContaining("truncated");
+        assertThatThrownBy(() -> PeopleSnapshotFile.map(other)).isInstanceOf(DataException.class).hasMessageContaining("not a people snapshot");
+        assertThatThrownBy(() -> PeopleSnapshotFile.map(dir.resolve("missing.snapshot"))).isInstanceOf(DataException.class);
+    }
+}
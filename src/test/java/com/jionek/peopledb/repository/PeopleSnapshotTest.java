@@ -0,0 +1,94 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.Address;
+import com.jionek.peopledb.model.Person;
+import com.jionek.peopledb.model.Region;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PeopleSnapshotTest {
+
+    private H2TestDatabase database;
+    private PeopleRepository repo;
+    private List<Person> people;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = new H2TestDatabase("snapshot");
+        repo = new PeopleRepository(database.dataSource());
+        people = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            Person person = new Person("John" + i % 100, i % 2 == 0 ? "Smith" : "Jones",
+                    ZonedDateTime.of(1960 + i % 40, 6, 15, 12, 0, 0, 0, ZoneId.of("-6")));
+            if (i % 10 != 0) person.setSalary(new BigDecimal(i).add(new BigDecimal("0.25")));
+            if (i % 4 != 0) {
+                person.setHomeAddress(new Address(null, i + " Beale St.", "Apt. 1a", "Wala Wala", "WA", "90210", "Fulton County",
+                        i % 3 == 0 ? Region.WEST : Region.EAST, "United States"));
+            }
+            people.add(person);
+        }
+        repo.saveAll(people);
+    }
+    @AfterEach
+    void tearDown() throws SQLException {
+        repo.close();
+        database.close();
+    }
+
+    @Test
+    public void loadsEveryPersonInIdOrder() {
+        PeopleSnapshot snapshot = repo.snapshot(500);
+
+        assertThat(snapshot.size()).isEqualTo(3000);
+        assertThat(snapshot.id(0)).isEqualTo(people.get(0).getId());
+        assertThat(snapshot.ids(row -> true)).isSorted().hasSize(3000);
+        assertThat(snapshot.count(snapshot.lastNameIs("Smith"))).isEqualTo(1500);
+        assertThat(snapshot.count(snapshot.firstNameIs("Nobody"))).isZero();
+    }
+
+    @Test
+    public void filtersMatchTheObjects() {
+        PeopleSnapshot snapshot = repo.snapshot();
+        ZonedDateTime from = ZonedDateTime.of(1980, 1, 1, 0, 0, 0, 0, ZoneId.of("+0"));
+        ZonedDateTime to = ZonedDateTime.of(1990, 1, 1, 0, 0, 0, 0, ZoneId.of("+0"));
+
+        long[] westSmithsOfThe80s = snapshot.ids(snapshot.homeRegionIs(Region.WEST)
+                .and(snapshot.lastNameIs("Smith"))
+                .and(snapshot.bornBetween(from, to)));
+
+        long[] expected = people.stream()
+                .filter(person -> person.getHomeAddress().map(address -> address.region() == Region.WEST).orElse(false))
+                .filter(person -> person.getLastName().equals("Smith"))
+                .filter(person -> !person.getDob().isBefore(from) && person.getDob().isBefore(to))
+                .mapToLong(Person::getId).toArray();
+        assertThat(westSmithsOfThe80s).isNotEmpty().containsExactly(expected);
+        assertThat(snapshot.count(snapshot.salaryBetween(new BigDecimal("100.25"), new BigDecimal("199.25")))).isEqualTo(90);
+    }
+
+    @Test
+    public void salaryStatsMatchTheDatabase() {
+        PeopleSnapshot snapshot = repo.snapshot();
+
+        PersonStats scanned = snapshot.salaryStats(snapshot.homeRegionIs(Region.EAST));
+        PersonStats aggregated = repo.aggregate(PersonAggregation.groupBy()
+                .where(PersonCriteria.where(PersonCriteria.HOME_REGION.eq(Region.EAST)))).get(0);
+
+        assertThat(scanned.headcount()).isEqualTo(aggregated.headcount());
+        assertThat(scanned.totalSalary()).isEqualByComparingTo(aggregated.totalSalary());
+        assertThat(scanned.averageSalary()).isEqualByComparingTo(aggregated.averageSalary().setScale(2, RoundingMode.HALF_EVEN));
+        assertThat(scanned.minSalary()).isEqualByComparingTo(aggregated.minSalary());
+        assertThat(scanned.maxSalary()).isEqualByComparingTo(aggregated.maxSalary());
+        assertThat(snapshot.salaryStats(snapshot.firstNameIs("Nobody")).totalSalary()).isNull();
+    }
+}
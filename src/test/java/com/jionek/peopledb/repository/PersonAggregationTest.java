@@ -0,0 +1,97 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.Address;
+import com.jionek.peopledb.model.Person;
+import com.jionek.peopledb.model.Region;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.jionek.peopledb.repository.PersonAggregation.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PersonAggregationTest {
+
+    private H2TestDatabase database;
+    private PeopleRepository repo;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = new H2TestDatabase("aggregation");
+        repo = new PeopleRepository(database.dataSource());
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            Person person = new Person("John" + i, i % 2 == 0 ? "Smith" : "Jones",
+                    ZonedDateTime.of(1960 + i, 6, 15, 12, 0, 0, 0, ZoneId.of("+0")));
+            person.setSalary(new BigDecimal(1000 * i));
+            if (i < 30) {
+                person.setHomeAddress(new Address(null, i + " Beale St.", "Apt. 1a", "Wala Wala", "WA", "90210", "Fulton County",
+                        i % 3 == 0 ? Region.WEST : Region.EAST, "United States"));
+            }
+            people.add(person);
+        }
+        repo.saveAll(people);
+    }
+    @AfterEach
+    void tearDown() throws SQLException {
+        repo.close();
+        database.close();
+    }
+
+    @Test
+    public void groupsSalariesByHomeRegion() {
+        List<PersonStats> stats = repo.aggregate(groupBy(HOME_REGION));
+
+        assertThat(stats).extracting(PersonStats::key)
+                .containsExactly(Arrays.asList((Object) null), List.of(Region.EAST), List.of(Region.WEST));
+        PersonStats west = stats.get(2);
+        // 0, 3, .. 27
+        assertThat(west.headcount()).isEqualTo(10);
+        assertThat(west.totalSalary()).isEqualByComparingTo("135000");
+        assertThat(west.averageSalary()).isEqualByComparingTo("13500");
+        assertThat(west.minSalary()).isEqualByComparingTo("0");
+        assertThat(west.maxSalary()).isEqualByComparingTo("27000");
+        assertThat(stats.get(0).headcount()).isEqualTo(10);
+    }
+
+    @Test
+    public void countsByBirthDecadeOfMatchingPeople() {
+        List<PersonStats> stats = repo.aggregate(groupBy(BIRTH_DECADE)
+                .where(PersonCriteria.where(PersonCriteria.LAST_NAME.eq("Smith"))));
+
+        assertThat(stats).extracting(group -> group.key().get(0)).containsExactly(1960, 1970, 1980, 1990);
+        assertThat(stats).extracting(PersonStats::headcount).containsOnly(5L);
+    }
+
+    @Test
+    public void aggregatesEveryoneWithoutDimensions() {
+        List<PersonStats> stats = repo.aggregate(groupBy().where(PersonCriteria.where(
+                PersonCriteria.HOME_REGION.eq(Region.WEST))));
+
+        assertThat(stats).singleElement().satisfies(total -> {
+            assertThat(total.key()).isEmpty();
+            assertThat(total.headcount()).isEqualTo(10);
+        });
+    }
+
+    @Test
+    public void sameShapeReusesSqlAndCanStream() {
+        PersonAggregation smiths = groupBy(LAST_NAME, BIRTH_YEAR);
+        int shapes = PersonAggregation.cachedShapes();
+
+        try (Stream<PersonStats> groups = repo.streamAggregate(smiths, 10)) {
+            assertThat(groups.count()).isEqualTo(40);
+        }
+        assertThat(groupBy(LAST_NAME, BIRTH_YEAR).sql()).isSameAs(smiths.sql());
+        assertThat(PersonAggregation.cachedShapes()).isLessThanOrEqualTo(shapes + 1);
+    }
+}
@@ -0,0 +1,136 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.Address;
+import com.jionek.peopledb.model.CrudOperation;
+import com.jionek.peopledb.model.Person;
+import com.jionek.peopledb.model.Region;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PersonAssociationBatchTest {
+    private static final int FAMILIES = 20;
+
+    private H2TestDatabase database;
+    private PeopleRepository repo;
+    private List<Long> fatherIds;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = new H2TestDatabase("lazy");
+        repo = new PeopleRepository(database.dataSource());
+        List<Person> fathers = new ArrayList<>();
+        for (int i = 0; i < FAMILIES; i++) {
+            Person father = person("John" + i, 1980);
+            father.setSpouse(person("Joan" + i, 1981));
+            father.setHomeAddress(address("123 Beale St."));
+            father.setBusinessAddress(address(i + " Market St."));
+            father.addChild(person("Johnny" + i, 2010));
+            father.addChild(person("Jane" + i, 2012));
+            fathers.add(father);
+        }
+        repo.saveAll(fathers);
+        fatherIds = fathers.stream().map(Person::getId).toList();
+        repo.enableLazyLoading();
+    }
+    @AfterEach
+    void tearDown() throws SQLException {
+        repo.close();
+        database.close();
+    }
+
+    @Test
+    public void loadsEachAssociationForWholeQueryAtOnce() {
+        HistogramMetrics metrics = new HistogramMetrics();
+        List<Person> fathers = repo.findAllById(fatherIds);
+        repo.setMetrics(metrics);
+
+        for (Person father : fathers) {
+            int i = fatherIds.indexOf(father.getId());
+            assertThat(father.getChildren()).extracting(Person::getFirstName).containsExactlyInAnyOrder("Johnny" + i, "Jane" + i);
+            assertThat(father.getSpouse().get().getFirstName()).isEqualTo("Joan" + i);
+            assertThat(father.getHomeAddress().get().streetAddress()).isEqualTo("123 Beale St.");
+            assertThat(father.getBusinessAddress().get().streetAddress()).isEqualTo(i + " Market St.");
+        }
+
+        // children, spouses, addresses
+        assertThat(metrics.stats(CrudOperation.FIND_ALL_BY_ID).count()).isEqualTo(3);
+    }
+
+    @Test
+    public void loadedPeopleAreLazyInTheirOwnBatch() {
+        HistogramMetrics metrics = new HistogramMetrics();
+        List<Person> fathers = repo.findAllById(fatherIds);
+        repo.setMetrics(metrics);
+
+        for (Person father : fathers) {
+            for (Person child : father.getChildren()) {
+                assertThat(child.getParent()).containsSame(father);
+                assertThat(child.getChildren()).isEmpty();
+                assertThat(child.getSpouse()).isEmpty();
+            }
+        }
+
+        // children, then once for all grandchildren, no child has a SPOUSE_ID to look up
+        assertThat(metrics.stats(CrudOperation.FIND_ALL_BY_ID).count()).isEqualTo(2);
+    }
+
+    @Test
+    public void readsNothingUntilAccessed() {
+        HistogramMetrics metrics = new HistogramMetrics();
+        repo.setMetrics(metrics);
+
+        Person father = repo.findById(fatherIds.get(0)).get();
+        List<Person> page = repo.findPage(null, 100).content();
+
+        assertThat(page).hasSize(FAMILIES * 4);
+        assertThat(metrics.stats(CrudOperation.FIND_ALL_BY_ID).count()).isZero();
+        assertThat(father.getSpouse().get().getFirstName()).isEqualTo("Joan0");
+        assertThat(metrics.stats(CrudOperation.FIND_ALL_BY_ID).count()).isEqualTo(1);
+    }
+
+    @Test
+    public void explicitlySetAssociationsAreNotLoaded() {
+        Person father = repo.findById(fatherIds.get(0)).get();
+        Person newSpouse = person("Jill", 1982);
+        Address newAddress = address("1 Main St.");
+        HistogramMetrics metrics = new HistogramMetrics();
+        repo.setMetrics(metrics);
+
+        father.setSpouse(newSpouse);
+        father.setHomeAddress(newAddress);
+
+        assertThat(father.getSpouse()).containsSame(newSpouse);
+        assertThat(father.getHomeAddress()).containsSame(newAddress);
+        assertThat(metrics.stats(CrudOperation.FIND_ALL_BY_ID).count()).isZero();
+    }
+
+    @Test
+    public void eagerAgainWhenDisabled() {
+        repo.disableLazyLoading();
+        HistogramMetrics metrics = new HistogramMetrics();
+        repo.setMetrics(metrics);
+
+        Person father = repo.findById(fatherIds.get(0)).get();
+
+        assertThat(father.getChildren()).hasSize(2);
+        assertThat(father.getSpouse()).isPresent();
+        assertThat(metrics.stats(CrudOperation.FIND_ALL_BY_ID).count()).isZero();
+    }
+
+    private static Person person(String firstName, int year) {
+        return new Person(firstName, "Smith", ZonedDateTime.of(year, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+    }
+
+    private static Address address(String street) {
+        return new Address(null, street, "Apt. 1a", "Wala Wala", "WA", "90210", "Fulton County", Region.WEST, "United States");
+    }
+}
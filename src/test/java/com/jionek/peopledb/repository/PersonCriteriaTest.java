@@ -0,0 +1,87 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.Address;
+import com.jionek.peopledb.model.Person;
+import com.jionek.peopledb.model.Region;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.jionek.peopledb.repository.PersonCriteria.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PersonCriteriaTest {
+
+    private H2TestDatabase database;
+    private PeopleRepository repo;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = new H2TestDatabase("criteria");
+        repo = new PeopleRepository(database.dataSource());
+        List<Person> people = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            Person person = new Person("John" + i, i % 2 == 0 ? "Smith" : "Jones",
+                    ZonedDateTime.of(1960 + i, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+            person.setSalary(new BigDecimal(1000 * i));
+            person.setHomeAddress(new Address(null, i + " Beale St.", "Apt. 1a", "Wala Wala", "WA", "90210", "Fulton County",
+                    i % 4 == 0 ? Region.WEST : Region.EAST, "United States"));
+            people.add(person);
+        }
+        repo.saveAll(people);
+    }
+    @AfterEach
+    void tearDown() throws SQLException {
+        repo.close();
+        database.close();
+    }
+
+    @Test
+    public void findsByTypedConditions() {
+        List<Person> found = repo.findAll(where(LAST_NAME.eq("Smith"), SALARY.between(new BigDecimal(10000), new BigDecimal(20000))));
+
+        assertThat(found).extracting(Person::getFirstName).containsExactly("John10", "John12", "John14", "John16", "John18", "John20");
+    }
+
+    @Test
+    public void findsByDobRangeAndHomeRegion() {
+        List<Person> found = repo.findAll(where(HOME_REGION.eq(Region.WEST))
+                .and(DOB.greaterThan(ZonedDateTime.of(1980, 1, 1, 0, 0, 0, 0, ZoneId.of("+0")))));
+
+        assertThat(found).extracting(Person::getFirstName).containsExactly("John20", "John24", "John28", "John32", "John36");
+        assertThat(repo.findAll(where())).hasSize(40);
+        assertThat(repo.findAll(where(EMAIL.isNull(), LAST_NAME.eq("Nobody")))).isEmpty();
+    }
+
+    @Test
+    public void sameShapeReusesStatement() {
+        PersonCriteria smiths = where(LAST_NAME.eq("Smith"), SALARY.lessThan(new BigDecimal(5000)));
+        PersonCriteria joneses = where(LAST_NAME.eq("Jones"), SALARY.lessThan(new BigDecimal(9000)));
+        repo.findAll(smiths);
+        long hitsBefore = repo.getStatementCacheStats().hits();
+
+        List<Person> found = repo.findAll(joneses);
+
+        assertThat(joneses.sql()).isSameAs(smiths.sql());
+        assertThat(repo.getStatementCacheStats().hits()).isEqualTo(hitsBefore + 1);
+        assertThat(found).extracting(Person::getFirstName).containsExactly("John1", "John3", "John5", "John7");
+    }
+
+    @Test
+    public void canStreamMatches() {
+        try (Stream<Person> smiths = repo.streamAll(where(LAST_NAME.eq("Smith")), 5)) {
+            assertThat(smiths.map(Person::getLastName).distinct()).containsExactly("Smith");
+        }
+        try (Stream<Person> smiths = repo.streamAll(where(LAST_NAME.eq("Smith")))) {
+            assertThat(smiths.count()).isEqualTo(20);
+        }
+    }
+}
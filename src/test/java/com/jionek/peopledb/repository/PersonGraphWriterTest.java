@@ -0,0 +1,96 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.Address;
+import com.jionek.peopledb.model.Person;
+import com.jionek.peopledb.model.Region;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PersonGraphWriterTest {
+
+    private H2TestDatabase database;
+    private PeopleRepository repo;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = new H2TestDatabase("graph");
+        repo = new PeopleRepository(database.dataSource());
+    }
+    @AfterEach
+    void tearDown() throws SQLException {
+        repo.close();
+        database.close();
+    }
+
+    @Test
+    public void savesFamilyInConstantNumberOfStatements() {
+        long people = 0;
+        for (int childCount : new int[]{1, 5, 50}) {
+            saveFamily(childCount);
+            people += 2 + childCount;
+            assertThat(repo.count()).isEqualTo(people);
+        }
+    }
+
+    private void saveFamily(int childCount) {
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        john.setSpouse(new Person("Joan", "Smith", ZonedDateTime.of(1981, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        john.setHomeAddress(address("123 Beale St."));
+        john.setBusinessAddress(address("1 Market St."));
+        for (int i = 0; i < childCount; i++) {
+            john.addChild(new Person("Child" + i, "Smith", ZonedDateTime.of(2010, 11, 15, 15, 15, 0, 0, ZoneId.of("-6"))));
+        }
+        long statementsBefore = statementExecutions();
+
+        repo.save(john);
+
+        // addresses, spouse, john, children
+        assertThat(statementExecutions() - statementsBefore).isEqualTo(4);
+        Person found = repo.findById(john.getId()).get();
+        assertThat(found.getSpouse().get().getFirstName()).isEqualTo("Joan");
+        assertThat(found.getBusinessAddress().get().streetAddress()).isEqualTo("1 Market St.");
+        assertThat(found.getChildren()).hasSize(childCount);
+    }
+
+    @Test
+    public void savesSharedAndPersistedNodesOnce() {
+        Address shared = address("123 Beale St.");
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        Person joan = new Person("Joan", "Smith", ZonedDateTime.of(1981, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        john.setHomeAddress(shared);
+        joan.setHomeAddress(shared);
+        john.setSpouse(joan);
+        joan.setSpouse(john);
+
+        repo.saveAll(List.of(john, joan));
+        Person child = new Person("Johnny", "Smith", ZonedDateTime.of(2010, 11, 15, 15, 15, 0, 0, ZoneId.of("-6")));
+        john.addChild(child);
+        child.setHomeAddress(shared);
+        repo.save(child);
+
+        assertThat(repo.count()).isEqualTo(3);
+        assertThat(repo.findById(john.getId()).get().getSpouse().get().getId()).isEqualTo(joan.getId());
+        assertThat(repo.findById(joan.getId()).get().getSpouse().get().getId()).isEqualTo(john.getId());
+        assertThat(repo.findById(child.getId()).get().getHomeAddress().get().id()).isEqualTo(shared.id());
+        try (AddressRepository addresses = new AddressRepository(database.dataSource())) {
+            assertThat(addresses.findPage(null, 10).content()).hasSize(1);
+        }
+    }
+
+    private long statementExecutions() {
+        StatementCacheStats stats = repo.getStatementCacheStats();
+        return stats.hits() + stats.misses();
+    }
+
+    private static Address address(String street) {
+        return new Address(null, street, "Apt. 1a", "Wala Wala", "WA", "90210", "Fulton County", Region.WEST, "United States");
+    }
+}
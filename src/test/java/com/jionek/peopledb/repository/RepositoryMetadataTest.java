@@ -0,0 +1,48 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.Address;
+import com.jionek.peopledb.model.CrudOperation;
+import com.jionek.peopledb.model.Person;
+import com.jionek.peopledb.model.Region;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RepositoryMetadataTest {
+
+    @Test
+    public void isBuiltOncePerRepositoryClass(){
+        assertThat(RepositoryMetadata.of(PeopleRepository.class)).isSameAs(RepositoryMetadata.of(PeopleRepository.class));
+        assertThat(RepositoryMetadata.of(PeopleRepository.class)).isNotSameAs(RepositoryMetadata.of(AddressRepository.class));
+    }
+
+    @Test
+    public void collectsSqlFromSqlAndMultiSqlAnnotations(){
+        RepositoryMetadata metadata = RepositoryMetadata.of(PeopleRepository.class);
+        assertThat(metadata.entityClass()).isEqualTo(Person.class);
+        assertThat(metadata.sql(CrudOperation.SAVE)).isEqualTo(PeopleRepository.SAVE_PERSON_SQL);
+        assertThat(metadata.sql(CrudOperation.FIND_BY_ID)).isEqualTo(PeopleRepository.FIND_BY_ID_SQL);
+        assertThat(metadata.sql(CrudOperation.DELETE_MANY)).isEqualTo(PeopleRepository.DELETE_IN_SQL);
+        assertThat(RepositoryMetadata.of(AddressRepository.class).sql(CrudOperation.COUNT)).isNull();
+    }
+
+    @Test
+    public void canGetAndSetId(){
+        RepositoryMetadata metadata = RepositoryMetadata.of(PeopleRepository.class);
+        Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15 , 15,15,0,0, ZoneId.of("-6")));
+        metadata.setId(john, 42L);
+        assertThat(john.getId()).isEqualTo(42L);
+        assertThat(metadata.getId(john)).isEqualTo(42L);
+    }
+
+    @Test
+    public void canSetFinalIdField(){
+        RepositoryMetadata metadata = RepositoryMetadata.of(AddressRepository.class);
+        Address address = new Address(null, "123 Beale St.", "Apt. 1a", "Wala Wala", "WA", "90210", "Fulton County", Region.WEST, "United States");
+        metadata.setId(address, 7L);
+        assertThat(address.id()).isEqualTo(7L);
+    }
+}
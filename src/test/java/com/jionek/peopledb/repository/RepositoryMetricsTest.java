@@ -0,0 +1,103 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.exception.UnableToSaveException;
+import com.jionek.peopledb.model.CrudOperation;
+import com.jionek.peopledb.model.Person;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RepositoryMetricsTest {
+
+    private H2TestDatabase database;
+    private PeopleRepository repo;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = new H2TestDatabase("metrics");
+        repo = new PeopleRepository(database.dataSource());
+    }
+    @AfterEach
+    void tearDown() throws SQLException {
+        repo.close();
+        database.close();
+    }
+
+    @Test
+    public void recordsLatencyRowsAndErrorsPerOperation() throws SQLException {
+        HistogramMetrics metrics = new HistogramMetrics();
+        repo.setMetrics(metrics);
+
+        repo.saveAll(List.of(person("John"), person("Jane"), person("Jim")));
+        Person joan = repo.save(person("Joan"));
+        repo.findById(joan.getId());
+        repo.findAll();
+        repo.delete(joan);
+        dropPeopleTable();
+        assertThatThrownBy(() -> repo.count()).isInstanceOf(RuntimeException.class);
+
+        OperationStats saves = metrics.stats(CrudOperation.SAVE);
+        assertThat(saves.count()).isEqualTo(2);
+        assertThat(saves.rows()).isEqualTo(4);
+        assertThat(saves.p99Nanos()).isPositive().isLessThanOrEqualTo(saves.maxNanos());
+        assertThat(metrics.stats(CrudOperation.FIND_BY_ID).rows()).isEqualTo(1);
+        assertThat(metrics.stats(CrudOperation.FIND_ALL).rows()).isEqualTo(4);
+        assertThat(metrics.stats(CrudOperation.DELETE_ONE).rows()).isEqualTo(1);
+        assertThat(metrics.stats(CrudOperation.COUNT).errors()).isEqualTo(1);
+        assertThat(metrics.stats()).containsOnlyKeys(CrudOperation.SAVE, CrudOperation.FIND_BY_ID,
+                CrudOperation.FIND_ALL, CrudOperation.DELETE_ONE, CrudOperation.COUNT);
+    }
+
+    @Test
+    public void saveThrowsInsteadOfSwallowingErrors() throws SQLException {
+        dropPeopleTable();
+        assertThatThrownBy(() -> repo.save(person("John"))).isInstanceOf(UnableToSaveException.class);
+    }
+
+    @Test
+    public void emitsJfrEventPerStatement() throws Exception {
+        Path file = Files.createTempFile("statements", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.jionek.peopledb.StatementExecution");
+            recording.start();
+            repo.save(person("John"));
+            repo.count();
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("com.jionek.peopledb.StatementExecution"))
+                .toList();
+        Files.delete(file);
+
+        assertThat(events).extracting(event -> event.getString("operation")).containsExactly("SAVE", "COUNT");
+        assertThat(events).extracting(event -> event.getString("repository")).containsOnly("PeopleRepository");
+        assertThat(events.get(1).getLong("rows")).isEqualTo(1);
+    }
+
+    private void dropPeopleTable() throws SQLException {
+        try (Connection connection = database.dataSource().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("DROP TABLE PEOPLE");
+        }
+    }
+
+    private static Person person(String firstName) {
+        return new Person(firstName, "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0")));
+    }
+}
@@ -0,0 +1,79 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.Person;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RowMapperCacheTest {
+
+    private H2TestDatabase database;
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        database = new H2TestDatabase("mappers");
+        connection = database.dataSource().getConnection();
+    }
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+        database.close();
+    }
+
+    @Test
+    public void compilesOncePerShape() throws SQLException {
+        AtomicInteger compilations = new AtomicInteger();
+        RowMapperCache<Map<String, Integer>> cache = new RowMapperCache<>(columnIndexes -> {
+            compilations.incrementAndGet();
+            return columnIndexes;
+        });
+
+        Map<String, Integer> first = mapperFor(cache, "SELECT ID AS P_ID, FIRST_NAME AS P_FIRST_NAME FROM PEOPLE");
+        Map<String, Integer> again = mapperFor(cache, "SELECT ID AS P_ID, FIRST_NAME AS P_FIRST_NAME FROM PEOPLE");
+        Map<String, Integer> other = mapperFor(cache, "SELECT FIRST_NAME AS P_FIRST_NAME, ID AS P_ID FROM PEOPLE");
+
+        assertThat(again).isSameAs(first);
+        assertThat(first).containsEntry("P_ID", 1).containsEntry("P_FIRST_NAME", 2);
+        assertThat(other).containsEntry("P_ID", 2).containsEntry("P_FIRST_NAME", 1);
+        assertThat(compilations.get()).isEqualTo(2);
+        assertThat(cache.compiledShapes()).isEqualTo(2);
+    }
+
+    @Test
+    public void differentQueryShapesDontShareIndexes() {
+        try (PeopleRepository repo = new PeopleRepository(database.dataSource())) {
+            Person john = new Person("John", "Smith", ZonedDateTime.of(1980, 11, 15, 15, 15, 0, 0, ZoneId.of("+0")));
+            john.setSalary(new BigDecimal("73000.00"));
+            repo.save(john);
+
+            Person found = repo.findById(john.getId()).get();
+            Person listed = repo.findAll().get(0);
+
+            assertThat(found).isEqualTo(john);
+            assertThat(listed).isEqualTo(john);
+            assertThat(listed.getSalary()).isEqualByComparingTo("73000");
+            assertThat(listed.getDob().toInstant()).isEqualTo(john.getDob().toInstant());
+        }
+    }
+
+    private <M> M mapperFor(RowMapperCache<M> cache, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+            M mapper = cache.mapperFor(rs);
+            assertThat(cache.mapperFor(rs)).isSameAs(mapper);
+            return mapper;
+        }
+    }
+}
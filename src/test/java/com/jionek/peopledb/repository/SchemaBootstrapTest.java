@@ -0,0 +1,87 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.exception.DataException;
+import com.jionek.peopledb.model.CrudOperation;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SchemaBootstrapTest {
+
+    private Connection connection;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:bootstrap;MODE=MySQL");
+        connection = dataSource.getConnection();
+    }
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void bootstrappedSchemaNeedsNoFullScans() {
+        SchemaBootstrap bootstrap = new SchemaBootstrap(connection, true);
+
+        assertThat(bootstrap.bootstrap()).isEmpty();
+        // nothing left to create the second time
+        assertThat(bootstrap.bootstrap()).isEmpty();
+    }
+
+    @Test
+    public void reportsJoinsWithoutIndex() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("""
+                    CREATE TABLE PEOPLE (ID BIGINT AUTO_INCREMENT PRIMARY KEY, FIRST_NAME VARCHAR(255), LAST_NAME VARCHAR(255),
+                    DOB TIMESTAMP, SALARY DECIMAL(15,2), EMAIL VARCHAR(255), HOME_ADDRESS BIGINT, BUSINESS_ADDRESS BIGINT,
+                    SPOUSE_ID BIGINT, PARENT_ID BIGINT)
+                    """);
+        }
+        new SchemaBootstrap(connection).createSchema();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DROP INDEX PEOPLE_PARENT_ID");
+        }
+
+        List<IndexAdvisor.FullScan> scans = new IndexAdvisor().check(connection);
+
+        // the CHILD join of the person graph queries
+        assertThat(scans).extracting(IndexAdvisor.FullScan::operation)
+                .containsExactlyInAnyOrder(CrudOperation.FIND_BY_ID, CrudOperation.FIND_ALL_BY_ID);
+        assertThat(scans).extracting(IndexAdvisor.FullScan::table).containsOnly("PEOPLE");
+        assertThatThrownBy(() -> new IndexAdvisor(true).check(connection))
+                .isInstanceOf(DataException.class)
+                .hasMessageContaining("PeopleRepository FIND_BY_ID scans PEOPLE");
+    }
+
+    @Test
+    public void wholeTableReadsAreNoFullScans() {
+        String plan = """
+                SELECT
+                    COUNT(*)
+                FROM "PUBLIC"."PEOPLE"
+                    /* PUBLIC.PEOPLE.tableScan */
+                /* direct lookup */
+                """;
+        String filtered = """
+                SELECT
+                    "PUBLIC"."PEOPLE"."ID"
+                FROM "PUBLIC"."PEOPLE"
+                    /* PUBLIC.PEOPLE.tableScan */
+                WHERE "PARENT_ID" IN(?1, ?2)
+                """;
+
+        assertThat(IndexAdvisor.h2FullScans(plan)).isEmpty();
+        assertThat(IndexAdvisor.h2FullScans(filtered)).containsExactly("PEOPLE");
+    }
+}
@@ -0,0 +1,62 @@
+package com.jionek.peopledb.repository;
+
+import com.jionek.peopledb.model.CrudOperation;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatementCacheTest {
+
+    private final Set<PreparedStatement> closed = new HashSet<>();
+
+    @Test
+    public void reusesStatementForSameOperationAndSql() throws SQLException {
+        StatementCache cache = new StatementCache(4);
+        PreparedStatement first = cache.get(CrudOperation.COUNT, "SELECT COUNT(*) FROM PEOPLE", this::statement);
+        PreparedStatement second = cache.get(CrudOperation.COUNT, "SELECT COUNT(*) FROM PEOPLE", this::statement);
+
+        assertThat(second).isSameAs(first);
+        assertThat(cache.stats().hits()).isEqualTo(1);
+        assertThat(cache.stats().misses()).isEqualTo(1);
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedAndClosesIt() throws SQLException {
+        StatementCache cache = new StatementCache(2);
+        PreparedStatement count = cache.get(CrudOperation.COUNT, "SELECT COUNT(*) FROM PEOPLE", this::statement);
+        PreparedStatement delete = cache.get(CrudOperation.DELETE_ONE, "DELETE FROM PEOPLE WHERE ID=?", this::statement);
+        cache.get(CrudOperation.COUNT, "SELECT COUNT(*) FROM PEOPLE", this::statement);
+        cache.get(CrudOperation.FIND_BY_ID, "SELECT * FROM PEOPLE WHERE ID=?", this::statement);
+
+        assertThat(closed).containsExactly(delete);
+        assertThat(cache.stats().evictions()).isEqualTo(1);
+        assertThat(cache.stats().size()).isEqualTo(2);
+
+        cache.close();
+        assertThat(closed).contains(count);
+        assertThat(cache.stats().size()).isZero();
+    }
+
+    private PreparedStatement statement(String sql) {
+        boolean[] isClosed = {false};
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "close" -> {
+                        isClosed[0] = true;
+                        closed.add((PreparedStatement) proxy);
+                        yield null;
+                    }
+                    case "isClosed" -> isClosed[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> sql;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}